@@ -0,0 +1,621 @@
+package com.haozileung.infra.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于NIO的memcached二进制协议客户端
+ * <p>
+ * 每个服务器保持少量长连接，所有连接由一个selector线程以非阻塞方式建立和读写，某个服务器无响应时不影响其他服务器的请求。
+ * 请求写入连接的发送队列后立即返回Future，
+ * 同一连接上可以有多个未完成的请求(pipelining)，响应按opaque对应到请求。 批量获取对每个服务器发送一组GETKQ加一个NOOP，
+ * 未命中的key没有响应，收到NOOP即表示该服务器的结果已全部返回
+ * </p>
+ */
+public class BinaryMemcachedClient implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(BinaryMemcachedClient.class);
+
+	private static final byte MAGIC_REQUEST = (byte) 0x80;
+
+	private static final byte MAGIC_RESPONSE = (byte) 0x81;
+
+	private static final byte OP_GET = 0x00;
+
+	private static final byte OP_SET = 0x01;
+
+	private static final byte OP_DELETE = 0x04;
+
+	private static final byte OP_FLUSH = 0x08;
+
+	private static final byte OP_NOOP = 0x0a;
+
+	private static final byte OP_GETKQ = 0x0d;
+
+	private static final short STATUS_OK = 0;
+
+	private static final short STATUS_KEY_NOT_FOUND = 1;
+
+	private static final int HEADER_LENGTH = 24;
+
+	/**
+	 * 超过30天的过期时间在协议中表示绝对时间
+	 */
+	private static final int MAX_RELATIVE_EXPIRATION = 60 * 60 * 24 * 30;
+
+	/**
+	 * 一次写入的最多请求包数
+	 */
+	private static final int MAX_WRITE_BATCH = 256;
+
+	/**
+	 * 断线后的重连间隔(毫秒)
+	 */
+	private static final long RECONNECT_MILLIS = 1000;
+
+	private final Selector selector;
+
+	/**
+	 * [服务器][连接]
+	 */
+	private final Connection[][] connections;
+
+	private final int connectTimeout;
+
+	private final AtomicInteger opaques = new AtomicInteger();
+
+	private final AtomicInteger roundRobin = new AtomicInteger();
+
+	private final AtomicBoolean wakeup = new AtomicBoolean();
+
+	private final Thread thread;
+
+	/**
+	 * 构造时等待各连接的首次连接完成(成功或失败)
+	 */
+	private final CountDownLatch initialConnects;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param servers
+	 *            服务器地址
+	 * @param connectionsPerServer
+	 *            每个服务器的连接数
+	 * @param connectTimeout
+	 *            连接超时(毫秒)
+	 * @throws IOException
+	 */
+	public BinaryMemcachedClient(List<InetSocketAddress> servers, int connectionsPerServer, int connectTimeout)
+			throws IOException {
+		if (servers.isEmpty()) {
+			throw new CacheException("No memcached server configured");
+		}
+		this.selector = Selector.open();
+		this.connectTimeout = connectTimeout;
+		this.connections = new Connection[servers.size()][Math.max(1, connectionsPerServer)];
+		this.initialConnects = new CountDownLatch(connections.length * connections[0].length);
+		for (int i = 0; i < connections.length; i++) {
+			for (int j = 0; j < connections[i].length; j++) {
+				connections[i][j] = new Connection(servers.get(i));
+				connect(connections[i][j]);
+			}
+		}
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				loop();
+			}
+		}, "memcached-nio");
+		this.thread.setDaemon(true);
+		this.thread.start();
+		try {
+			// 连接在selector线程中完成，等待首次连接结束，避免刚创建的客户端所有请求都失败
+			initialConnects.await(connectTimeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 获取数据
+	 *
+	 * @param key
+	 * @return 未命中时结果为null
+	 */
+	public CompletableFuture<byte[]> get(String key) {
+		byte[] k = key.getBytes(StandardCharsets.UTF_8);
+		Request request = new Request(null);
+		send(connectionFor(key), request, packet(OP_GET, request.opaque, null, k, null));
+		return request.future.thenApply(value -> (byte[]) value);
+	}
+
+	/**
+	 * 批量获取数据，每个服务器一次往返
+	 *
+	 * @param keys
+	 * @return 命中的数据，未命中的key不在结果中
+	 */
+	public CompletableFuture<Map<String, byte[]>> getMulti(Collection<String> keys) {
+		Map<Connection, List<String>> groups = new HashMap<Connection, List<String>>();
+		for (String key : keys) {
+			Connection connection = connectionFor(key);
+			List<String> group = groups.get(connection);
+			if (group == null) {
+				group = new ArrayList<String>();
+				groups.put(connection, group);
+			}
+			group.add(key);
+		}
+		List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+		for (Map.Entry<Connection, List<String>> group : groups.entrySet()) {
+			Request request = new Request(new ConcurrentHashMap<String, byte[]>());
+			ByteBuffer[] packets = new ByteBuffer[group.getValue().size() + 1];
+			int i = 0;
+			for (String key : group.getValue()) {
+				packets[i++] = packet(OP_GETKQ, request.opaque, null, key.getBytes(StandardCharsets.UTF_8), null);
+			}
+			packets[i] = packet(OP_NOOP, request.opaque, null, null, null);
+			send(group.getKey(), request, packets);
+			futures.add(request.future);
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+			Map<String, byte[]> values = new HashMap<String, byte[]>();
+			for (CompletableFuture<Object> future : futures) {
+				@SuppressWarnings("unchecked")
+				Map<String, byte[]> part = (Map<String, byte[]>) future.join();
+				values.putAll(part);
+			}
+			return values;
+		});
+	}
+
+	/**
+	 * 写入数据
+	 *
+	 * @param key
+	 * @param value
+	 * @param expiration
+	 *            过期时间(秒)，不大于0时不过期
+	 * @return
+	 */
+	public CompletableFuture<Boolean> set(String key, byte[] value, int expiration) {
+		int exp = Math.max(0, expiration);
+		if (exp > MAX_RELATIVE_EXPIRATION) {
+			exp = (int) (System.currentTimeMillis() / 1000 + exp);
+		}
+		byte[] extras = ByteBuffer.allocate(8).putInt(0).putInt(exp).array();
+		Request request = new Request(null);
+		send(connectionFor(key), request,
+				packet(OP_SET, request.opaque, extras, key.getBytes(StandardCharsets.UTF_8), value));
+		return request.future.thenApply(ok -> (Boolean) ok);
+	}
+
+	/**
+	 * 删除数据
+	 *
+	 * @param key
+	 * @return key不存在时为false
+	 */
+	public CompletableFuture<Boolean> delete(String key) {
+		Request request = new Request(null);
+		send(connectionFor(key), request,
+				packet(OP_DELETE, request.opaque, null, key.getBytes(StandardCharsets.UTF_8), null));
+		return request.future.thenApply(ok -> (Boolean) ok);
+	}
+
+	/**
+	 * 清空所有服务器
+	 *
+	 * @return
+	 */
+	public CompletableFuture<Void> flushAll() {
+		List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+		for (Connection[] server : connections) {
+			Request request = new Request(null);
+			send(pick(server, 0), request, packet(OP_FLUSH, request.opaque, null, null, null));
+			futures.add(request.future);
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		selector.wakeup();
+		try {
+			thread.join(RECONNECT_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (Connection[] server : connections) {
+			for (Connection connection : server) {
+				disconnect(connection, new CacheException("Memcached client closed"));
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			logger.debug("关闭selector失败", e);
+		}
+	}
+
+	private Connection connectionFor(String key) {
+		Connection[] server = connections[(key.hashCode() & 0x7fffffff) % connections.length];
+		return pick(server, roundRobin.getAndIncrement() & 0x7fffffff);
+	}
+
+	/**
+	 * 从start开始选择一个已连接的连接，都未连接时返回第一个，发送时失败
+	 */
+	private Connection pick(Connection[] server, int start) {
+		for (int i = 0; i < server.length; i++) {
+			Connection connection = server[(start + i) % server.length];
+			if (connection.connected) {
+				return connection;
+			}
+		}
+		return server[start % server.length];
+	}
+
+	private void send(Connection connection, Request request, ByteBuffer... packets) {
+		request.future.whenComplete((value, error) -> connection.pending.remove(request.opaque, request));
+		if (!connection.connected) {
+			request.future.completeExceptionally(new CacheException("Memcached server not connected: "
+					+ connection.address));
+			return;
+		}
+		connection.pending.put(request.opaque, request);
+		if (!connection.connected) {
+			request.future.completeExceptionally(new CacheException("Memcached server not connected: "
+					+ connection.address));
+			return;
+		}
+		for (ByteBuffer packet : packets) {
+			connection.writes.add(packet);
+		}
+		if (wakeup.compareAndSet(false, true)) {
+			selector.wakeup();
+		}
+	}
+
+	private static ByteBuffer packet(byte opcode, int opaque, byte[] extras, byte[] key, byte[] value) {
+		int extrasLength = extras == null ? 0 : extras.length;
+		int keyLength = key == null ? 0 : key.length;
+		int valueLength = value == null ? 0 : value.length;
+		int bodyLength = extrasLength + keyLength + valueLength;
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+		buffer.put(MAGIC_REQUEST).put(opcode).putShort((short) keyLength).put((byte) extrasLength).put((byte) 0)
+				.putShort((short) 0).putInt(bodyLength).putInt(opaque).putLong(0);
+		if (extras != null) {
+			buffer.put(extras);
+		}
+		if (key != null) {
+			buffer.put(key);
+		}
+		if (value != null) {
+			buffer.put(value);
+		}
+		// 转为Buffer调用以兼容Java 8
+		((Buffer) buffer).flip();
+		return buffer;
+	}
+
+	private void loop() {
+		long timeout = RECONNECT_MILLIS;
+		while (!closed) {
+			try {
+				selector.select(Math.max(1, timeout));
+				wakeup.set(false);
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					Connection connection = (Connection) key.attachment();
+					try {
+						if (key.isValid() && key.isConnectable()) {
+							finishConnect(connection);
+						}
+						if (key.isValid() && key.isReadable()) {
+							read(connection);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(connection);
+						}
+					} catch (IOException | RuntimeException e) {
+						logger.warn("memcached连接异常{}", connection.address, e);
+						disconnect(connection, e);
+					}
+				}
+				long now = System.currentTimeMillis();
+				timeout = RECONNECT_MILLIS;
+				for (Connection[] server : connections) {
+					for (Connection connection : server) {
+						if (connection.connected) {
+							if (!connection.writes.isEmpty()) {
+								try {
+									write(connection);
+								} catch (IOException e) {
+									logger.warn("memcached连接异常{}", connection.address, e);
+									disconnect(connection, e);
+								}
+							}
+						} else if (connection.channel != null) {
+							// 正在连接，超时后放弃，等待下次重连
+							if (now >= connection.connectDeadline) {
+								connectFailed(connection, new IOException("Connect timed out after " + connectTimeout
+										+ "ms"));
+							} else {
+								timeout = Math.min(timeout, connection.connectDeadline - now);
+							}
+						} else if (now >= connection.reconnectAt) {
+							connect(connection);
+						}
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				logger.error("memcached selector异常", e);
+			}
+		}
+	}
+
+	/**
+	 * 发起非阻塞连接，连接结果在selector线程中由finishConnect处理
+	 */
+	private void connect(Connection connection) {
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			connection.channel = channel;
+			connection.connectDeadline = System.currentTimeMillis() + connectTimeout;
+			boolean connected = channel.connect(connection.address);
+			connection.key = channel.register(selector, connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT,
+					connection);
+			if (connected) {
+				connected(connection);
+			}
+		} catch (IOException e) {
+			connectFailed(connection, e);
+		}
+	}
+
+	private void finishConnect(Connection connection) {
+		try {
+			if (connection.channel.finishConnect()) {
+				connection.key.interestOps(SelectionKey.OP_READ);
+				connected(connection);
+			}
+		} catch (IOException e) {
+			connectFailed(connection, e);
+		}
+	}
+
+	private void connected(Connection connection) {
+		((Buffer) connection.readBuffer).clear();
+		connection.connected = true;
+		logger.info("已连接memcached服务器{}", connection.address);
+		if (!connection.attempted) {
+			connection.attempted = true;
+			initialConnects.countDown();
+		}
+	}
+
+	private void connectFailed(Connection connection, IOException cause) {
+		logger.warn("连接memcached服务器{}失败", connection.address, cause);
+		disconnect(connection, cause);
+		if (!connection.attempted) {
+			connection.attempted = true;
+			initialConnects.countDown();
+		}
+	}
+
+	private void disconnect(Connection connection, Throwable cause) {
+		connection.connected = false;
+		connection.reconnectAt = System.currentTimeMillis() + RECONNECT_MILLIS;
+		if (connection.key != null) {
+			connection.key.cancel();
+			connection.key = null;
+		}
+		if (connection.channel != null) {
+			try {
+				connection.channel.close();
+			} catch (IOException e) {
+				logger.debug("关闭连接失败", e);
+			}
+			connection.channel = null;
+		}
+		connection.writes.clear();
+		for (Request request : connection.pending.values()) {
+			request.future.completeExceptionally(cause instanceof CacheException ? cause : new CacheException(
+					cause));
+		}
+		connection.pending.clear();
+	}
+
+	private void write(Connection connection) throws IOException {
+		List<ByteBuffer> batch = connection.writeBatch;
+		while (true) {
+			// 已排队的请求合并为一次写
+			batch.clear();
+			Iterator<ByteBuffer> queued = connection.writes.iterator();
+			while (queued.hasNext() && batch.size() < MAX_WRITE_BATCH) {
+				batch.add(queued.next());
+			}
+			if (batch.isEmpty()) {
+				connection.key.interestOps(SelectionKey.OP_READ);
+				return;
+			}
+			connection.channel.write(batch.toArray(new ByteBuffer[batch.size()]));
+			for (ByteBuffer buffer : batch) {
+				if (buffer.hasRemaining()) {
+					connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+					return;
+				}
+				connection.writes.poll();
+			}
+		}
+	}
+
+	private void read(Connection connection) throws IOException {
+		if (connection.channel.read(connection.readBuffer) < 0) {
+			throw new IOException("Connection closed by server");
+		}
+		ByteBuffer buffer = connection.readBuffer;
+		((Buffer) buffer).flip();
+		while (buffer.remaining() >= HEADER_LENGTH) {
+			int start = buffer.position();
+			int bodyLength = buffer.getInt(start + 8);
+			if (buffer.remaining() < HEADER_LENGTH + bodyLength) {
+				if (HEADER_LENGTH + bodyLength > buffer.capacity()) {
+					// 扩大缓冲区以容纳整个响应
+					ByteBuffer larger = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+					larger.put(buffer);
+					connection.readBuffer = larger;
+					return;
+				}
+				break;
+			}
+			if (buffer.get(start) != MAGIC_RESPONSE) {
+				throw new IOException("Invalid memcached response magic: " + buffer.get(start));
+			}
+			byte opcode = buffer.get(start + 1);
+			int keyLength = buffer.getShort(start + 2) & 0xffff;
+			int extrasLength = buffer.get(start + 4) & 0xff;
+			short status = buffer.getShort(start + 6);
+			int opaque = buffer.getInt(start + 12);
+			byte[] key = new byte[keyLength];
+			byte[] value = new byte[bodyLength - extrasLength - keyLength];
+			((Buffer) buffer).position(start + HEADER_LENGTH + extrasLength);
+			buffer.get(key);
+			buffer.get(value);
+			Request request = connection.pending.get(opaque);
+			if (request != null) {
+				complete(request, opcode, status, key, value);
+			}
+		}
+		buffer.compact();
+	}
+
+	private static void complete(Request request, byte opcode, short status, byte[] key, byte[] value) {
+		switch (opcode) {
+		case OP_GETKQ:
+			if (status == STATUS_OK) {
+				request.values.put(new String(key, StandardCharsets.UTF_8), value);
+			}
+			break;
+		case OP_NOOP:
+			request.future.complete(request.values);
+			break;
+		case OP_GET:
+			if (status == STATUS_OK) {
+				request.future.complete(value);
+			} else if (status == STATUS_KEY_NOT_FOUND) {
+				request.future.complete(null);
+			} else {
+				request.future.completeExceptionally(error(status, value));
+			}
+			break;
+		default:
+			if (status == STATUS_OK || status == STATUS_KEY_NOT_FOUND) {
+				request.future.complete(status == STATUS_OK);
+			} else {
+				request.future.completeExceptionally(error(status, value));
+			}
+		}
+	}
+
+	private static CacheException error(short status, byte[] message) {
+		return new CacheException("Memcached error " + status + ": " + new String(message, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 等待响应的请求
+	 */
+	private final class Request {
+
+		final int opaque = opaques.incrementAndGet();
+
+		final CompletableFuture<Object> future = new CompletableFuture<Object>();
+
+		/**
+		 * 批量获取的结果
+		 */
+		final Map<String, byte[]> values;
+
+		Request(Map<String, byte[]> values) {
+			this.values = values;
+		}
+	}
+
+	/**
+	 * 一个连接及其发送队列和未完成的请求
+	 */
+	private static final class Connection {
+
+		final InetSocketAddress address;
+
+		final Queue<ByteBuffer> writes = new ConcurrentLinkedQueue<ByteBuffer>();
+
+		final ConcurrentMap<Integer, Request> pending = new ConcurrentHashMap<Integer, Request>();
+
+		/**
+		 * 只在selector线程中使用
+		 */
+		ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+
+		final List<ByteBuffer> writeBatch = new ArrayList<ByteBuffer>();
+
+		/**
+		 * 已连接或正在连接时不为null
+		 */
+		volatile SocketChannel channel;
+
+		volatile SelectionKey key;
+
+		volatile boolean connected;
+
+		volatile long reconnectAt;
+
+		/**
+		 * 正在连接时的超时时间，只在selector线程中使用
+		 */
+		long connectDeadline;
+
+		/**
+		 * 是否已完成首次连接，只在selector线程中使用
+		 */
+		boolean attempted;
+
+		Connection(InetSocketAddress address) {
+			this.address = address;
+		}
+	}
+
+}
@@ -1,7 +1,9 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Implementors define a caching algorithm. All implementors <b>must</b> be
@@ -27,6 +29,23 @@ public interface Cache {
 	 */
 	public void put(Object key, Serializable value) throws CacheException;
 
+	/**
+	 * Get multiple items from the cache in as few round trips as possible
+	 *
+	 * @param keys
+	 * @return the cached objects by key, keys not found are absent
+	 * @throws CacheException
+	 */
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException;
+
+	/**
+	 * Add multiple items to the cache in as few round trips as possible
+	 *
+	 * @param values
+	 * @throws CacheException
+	 */
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException;
+
 	/**
 	 * Add an item to the cache
 	 *
@@ -44,6 +63,11 @@ public interface Cache {
 	 */
 	public void remove(Object key) throws CacheException;
 
+	/**
+	 * Remove multiple items from the cache
+	 */
+	public void removeAll(Collection<?> keys) throws CacheException;
+
 	/**
 	 * Clear the cache
 	 */
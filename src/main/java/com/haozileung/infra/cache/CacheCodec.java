@@ -0,0 +1,42 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+
+/**
+ * 缓存值编解码器
+ * <p>
+ * 编码结果由{@link CacheCodecs}加上头部字节后写入缓存，头部记录编码器标识，读取时按标识选择编码器，切换编码器不影响已缓存的数据
+ * </p>
+ */
+public interface CacheCodec {
+
+	/**
+	 * 编码器标识，取值1-15
+	 *
+	 * @return
+	 */
+	byte getId();
+
+	/**
+	 * 编码
+	 *
+	 * @param value
+	 * @return 不能按原类型还原此值时返回null，改用Java序列化
+	 * @throws CacheException
+	 */
+	byte[] encode(Serializable value) throws CacheException;
+
+	/**
+	 * 解码
+	 *
+	 * @param data
+	 * @param offset
+	 *            数据起始位置
+	 * @param length
+	 *            数据长度
+	 * @return
+	 * @throws CacheException
+	 */
+	Object decode(byte[] data, int offset, int length) throws CacheException;
+
+}
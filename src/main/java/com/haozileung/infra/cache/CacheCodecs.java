@@ -0,0 +1,165 @@
+package com.haozileung.infra.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 缓存值编码入口
+ * <p>
+ * 写入格式为 头部字节 + 数据，头部低4位为编码器标识，0x40表示数据经过Deflate压缩。 编码器按region配置：cache.codec.
+ * &lt;region&gt;=fastjson，未配置时使用cache.codec，默认为java，编码器不支持的值使用java。
+ * 读取时按头部选择编码器，以0xACED开头的旧数据按Java序列化读取
+ * </p>
+ */
+public class CacheCodecs {
+
+	public static final CacheCodec JAVA = new JavaCacheCodec();
+
+	public static final CacheCodec FASTJSON = new FastjsonCacheCodec();
+
+	/**
+	 * 压缩标识
+	 */
+	private static final int COMPRESSED = 0x40;
+
+	/**
+	 * 编码器标识掩码
+	 */
+	private static final int CODEC_MASK = 0x0F;
+
+	/**
+	 * 编码后大于等于此字节数时压缩，不大于0时不压缩
+	 */
+	private static final int COMPRESS_THRESHOLD = NumberUtils.toInt(
+			PropertiesUtil.getProperties().getProperty("cache.codec.compress_threshold"), 2048);
+
+	private static final CacheCodec[] CODECS = new CacheCodec[CODEC_MASK + 1];
+
+	private static final ConcurrentMap<String, CacheCodec> REGION_CODECS = new ConcurrentHashMap<String, CacheCodec>();
+
+	static {
+		CODECS[JAVA.getId()] = JAVA;
+		CODECS[FASTJSON.getId()] = FASTJSON;
+	}
+
+	/**
+	 * 获取region使用的编码器
+	 *
+	 * @param region
+	 * @return
+	 */
+	public static CacheCodec forRegion(String region) {
+		CacheCodec codec = REGION_CODECS.get(region);
+		if (codec == null) {
+			String name = PropertiesUtil.getProperties().getProperty("cache.codec." + region,
+					PropertiesUtil.getProperties().getProperty("cache.codec"));
+			codec = StringUtils.equalsIgnoreCase("fastjson", StringUtils.trim(name)) ? FASTJSON : JAVA;
+			REGION_CODECS.putIfAbsent(region, codec);
+		}
+		return codec;
+	}
+
+	/**
+	 * 按region配置的编码器编码
+	 *
+	 * @param region
+	 * @param value
+	 * @return
+	 * @throws CacheException
+	 */
+	public static byte[] encode(String region, Serializable value) throws CacheException {
+		CacheCodec codec = forRegion(region);
+		byte[] body = codec.encode(value);
+		if (body == null) {
+			codec = JAVA;
+			body = codec.encode(value);
+		}
+		int header = codec.getId();
+		if (COMPRESS_THRESHOLD > 0 && body.length >= COMPRESS_THRESHOLD) {
+			byte[] compressed = deflate(body);
+			if (compressed.length < body.length) {
+				body = compressed;
+				header |= COMPRESSED;
+			}
+		}
+		byte[] data = new byte[body.length + 1];
+		data[0] = (byte) header;
+		System.arraycopy(body, 0, data, 1, body.length);
+		CacheStats.region(region).encoded(data.length);
+		return data;
+	}
+
+	/**
+	 * 按头部字节解码
+	 *
+	 * @param data
+	 * @return
+	 * @throws CacheException
+	 */
+	public static Object decode(byte[] data) throws CacheException {
+		if (data == null || data.length == 0) {
+			return null;
+		}
+		if (data.length > 1 && data[0] == (byte) 0xAC && data[1] == (byte) 0xED) {
+			// 无头部的Java序列化数据
+			return JAVA.decode(data, 0, data.length);
+		}
+		CacheCodec codec = CODECS[data[0] & CODEC_MASK];
+		if (codec == null) {
+			throw new CacheException("Unknown cache codec: " + (data[0] & CODEC_MASK));
+		}
+		if ((data[0] & COMPRESSED) != 0) {
+			byte[] body = inflate(data, 1, data.length - 1);
+			return codec.decode(body, 0, body.length);
+		}
+		return codec.decode(data, 1, data.length - 1);
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] data, int offset, int length) throws CacheException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data, offset, length);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(length * 3);
+			byte[] buffer = new byte[4096];
+			while (!inflater.finished()) {
+				int n = inflater.inflate(buffer);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new CacheException("Truncated compressed cache data");
+				}
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new CacheException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+}
@@ -1,25 +1,118 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haozileung.infra.utils.PropertiesUtil;
+
 /**
  * 自动缓存数据重加载
+ * <p>
+ * 读取顺序为L1、堆外缓存(仅cache.offheap.regions中的region)、L2(Redis)、回调加载
+ * </p>
+ * <p>
+ * 回调返回null时在各级缓存中写入空值标记{@link NullValue}，在cache.null_ttl_seconds(默认60秒)内直接返回null，
+ * 可用cache.null_ttl_seconds.&lt;region&gt;单独配置，不大于0时不缓存空值
+ * </p>
  */
 public class CacheHelper {
 
-	private final static CacheUpdater g_ThreadPool = new CacheUpdater();
+	private final static CacheRefresher REFRESHER = new CacheRefresher();
 	private static final Logger logger = LoggerFactory.getLogger(CacheHelper.class);
 
+	/**
+	 * 正在加载的(region, key)
+	 */
+	private static final ConcurrentMap<List<String>, CompletableFuture<Object>> IN_FLIGHT = new ConcurrentHashMap<List<String>, CompletableFuture<Object>>();
+
+	/**
+	 * 等待其他调用方加载的最长时间(毫秒)
+	 */
+	private static final long LOAD_WAIT_MILLIS = NumberUtils.toLong(
+			PropertiesUtil.getProperties().getProperty("cache.load_wait_millis"), 3000);
+
+	/**
+	 * 最近一次加载的数据，等待超时或加载失败时使用，内存不足时可被回收
+	 */
+	private static final com.google.common.cache.Cache<List<String>, Object> STALE = CacheBuilder
+			.newBuilder()
+			.maximumSize(NumberUtils.toLong(PropertiesUtil.getProperties().getProperty("cache.stale_size"), 1000))
+			.softValues().build();
+
+	/**
+	 * 空值缓存时间(秒)的默认值
+	 */
+	private static final int NULL_TTL_SECONDS = NumberUtils.toInt(
+			PropertiesUtil.getProperties().getProperty("cache.null_ttl_seconds"), 60);
+
+	/**
+	 * 各region的空值缓存时间(秒)
+	 */
+	private static final ConcurrentMap<String, Integer> NULL_TTLS = new ConcurrentHashMap<String, Integer>();
+
+	/**
+	 * 异步读取L2的线程池
+	 */
+	private static final ExecutorService IO_EXECUTOR = createExecutor("cache.async_io_threads", 8,
+			"cache-io-%d");
+
+	/**
+	 * 异步加载数据的线程池
+	 */
+	private static final ExecutorService LOADER_EXECUTOR = createExecutor("cache.async_loader_threads", 8,
+			"cache-loader-%d");
+
+	/**
+	 * 收到其他节点的失效消息时清除本节点的缓存
+	 */
+	private static final IInvalidationListener INVALIDATION_LISTENER = new IInvalidationListener() {
+		@Override
+		public void onInvalidate(String region, Collection<String> keys) {
+			logger.debug("其他节点通知清除L1缓存{} - {}", region, keys);
+			for (String key : keys) {
+				evictLocal(region, key);
+			}
+		}
+	};
+
+	/**
+	 * 通知其他节点清除L1，第一次读写缓存时创建
+	 */
+	private static volatile CacheInvalidator invalidator;
+
 	public static void destroy() {
+		synchronized (CacheHelper.class) {
+			if (invalidator != null) {
+				invalidator.close();
+				invalidator = null;
+			}
+		}
 		EhCacheManager.destroy();
+		OffHeapCacheManager.destroy();
 		RedisCacheManager.destroy();
 	}
 
@@ -37,75 +130,649 @@ public class CacheHelper {
 	@SuppressWarnings("unchecked")
 	public static <T> T get(final String region, final String key, final ICacheInvoker<T> invoker) {
 		// 1. 从正常缓存中获取数据
-		T data = (T) EhCacheManager.get(region, key);
-		if (data == null) {
+		Object cached = getLocal(region, key, invoker);
+		if (cached != null) {
+			return cached instanceof NullValue ? null : (T) cached;
+		}
+		// 2. 从全局二级缓存中获取数据,执行自动更新数据策略，结果直接返回
+		cached = getRemote(region, key);
+		if (cached instanceof NullValue) {
+			return null;
+		}
+		T data = (T) cached;
+		if (invoker != null) {
+			if (data == null) {
+				logger.debug("在L2缓存中未找到内容！{} - {}", region, key);
+				data = load(region, key, invoker);
+			} else {
+				REFRESHER.refreshRemote(region, key, invoker);
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * 异步获取缓存数据
+	 * <p>
+	 * L1和堆外缓存在调用线程中读取，命中时返回已完成的Future；L2在I/O线程池(cache.async_io_threads)中读取，
+	 * 回调在加载线程池(cache.async_loader_threads)中执行，与同步的get共享同一个key的加载。
+	 * 线程池已满时不在调用线程中执行，有旧数据时返回旧数据，否则Future以RejectedExecutionException异常完成
+	 * </p>
+	 *
+	 * @param region
+	 *            缓存分区
+	 * @param key
+	 *            缓存key
+	 * @param invoker
+	 *            回调方法
+	 * @return 完成时返回对应类型的数据
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> CompletableFuture<T> getAsync(final String region, final String key,
+			final ICacheInvoker<T> invoker) {
+		Object cached;
+		try {
+			cached = getLocal(region, key, invoker);
+		} catch (RuntimeException e) {
+			return failed(e);
+		}
+		if (cached != null) {
+			return CompletableFuture.completedFuture(cached instanceof NullValue ? null : (T) cached);
+		}
+		CompletableFuture<Object> remoteFuture;
+		try {
+			remoteFuture = CompletableFuture.supplyAsync(() -> getRemote(region, key), IO_EXECUTOR);
+		} catch (RejectedExecutionException e) {
+			Object stale = STALE.getIfPresent(Arrays.asList(region, key));
+			if (stale != null) {
+				logger.warn("L2读取线程池已满，使用旧数据{} - {}", region, key);
+				return CompletableFuture.completedFuture((T) stale);
+			}
+			logger.warn("L2读取线程池已满{} - {}", region, key);
+			return failed(e);
+		}
+		return remoteFuture.thenCompose(remote -> {
+			if (remote instanceof NullValue) {
+				return CompletableFuture.completedFuture((T) null);
+			}
+			if (invoker == null) {
+				return CompletableFuture.completedFuture((T) remote);
+			}
+			if (remote == null) {
+				logger.debug("在L2缓存中未找到内容！{} - {}", region, key);
+				return loadAsync(region, key, invoker);
+			}
+			REFRESHER.refreshRemote(region, key, invoker);
+			return CompletableFuture.completedFuture((T) remote);
+		});
+	}
+
+	/**
+	 * 从L1和堆外缓存读取，命中时按需提前刷新
+	 *
+	 * @param region
+	 * @param key
+	 * @param invoker
+	 * @return 数据或空值标记，未命中时返回null
+	 */
+	private static Object getLocal(String region, String key, ICacheInvoker<?> invoker) {
+		// 写入L1之前开始接收其他节点的失效消息
+		getInvalidator();
+		RegionStats stats = CacheStats.region(region);
+		stats.access(key);
+		Object cached = live(EhCacheManager.get(region, key));
+		if (cached == null) {
 			logger.debug("在L1缓存中未找到内容！{} - {}", region, key);
-			// 2. 从全局二级缓存中获取数据,执行自动更新数据策略，结果直接返回
-			data = (T) RedisCacheManager.get(region, key);
-			if (invoker != null) {
-				if (data == null) {
-					logger.debug("在L2缓存中未找到内容！{} - {}", region, key);
-					data = invoker.callback();
-					EhCacheManager.set(region, key, (Serializable) data);
-					RedisCacheManager.set(region, key, (Serializable) data);
+			if (!OffHeapCacheManager.isEnabled(region)) {
+				return null;
+			}
+			cached = live(OffHeapCacheManager.get(region, key));
+			if (cached == null) {
+				return null;
+			}
+			EhCacheManager.set(region, key, (Serializable) cached);
+			if (!(cached instanceof NullValue)) {
+				stats.offHeapHit(1);
+			}
+		} else if (!(cached instanceof NullValue)) {
+			stats.l1Hit(1);
+		}
+		if (cached instanceof NullValue) {
+			stats.nullHit(1);
+		} else if (invoker != null) {
+			// 快过期的热点数据提前刷新
+			REFRESHER.refreshAhead(region, key, invoker);
+		}
+		return cached;
+	}
+
+	/**
+	 * 从L2读取，命中时写入堆外缓存，空值标记同时写入L1，之后的请求不再访问L2
+	 *
+	 * @param region
+	 * @param key
+	 * @return 数据或空值标记，未命中时返回null
+	 */
+	private static Object getRemote(String region, String key) {
+		RegionStats stats = CacheStats.region(region);
+		long start = System.nanoTime();
+		Object cached = live(RedisCacheManager.get(region, key));
+		stats.l2Fetched(System.nanoTime() - start);
+		if (cached != null) {
+			OffHeapCacheManager.set(region, key, (Serializable) cached);
+		}
+		if (cached == null) {
+			stats.miss(1);
+		} else if (cached instanceof NullValue) {
+			stats.nullHit(1);
+			EhCacheManager.set(region, key, (Serializable) cached);
+		} else {
+			stats.l2Hit(1);
+		}
+		return cached;
+	}
+
+	/**
+	 * 批量获取缓存数据
+	 * <p>
+	 * L1未命中的key从L2一次取回并写入L1，仍未命中的key一次性交给回调加载
+	 * </p>
+	 *
+	 * @param region
+	 *            缓存分区
+	 * @param keys
+	 *            缓存key
+	 * @param invoker
+	 *            批量回调方法
+	 * @return 按keys顺序返回找到的数据，没有数据的key不在结果中
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Map<String, T> getAll(final String region, Collection<String> keys,
+			final IBatchCacheInvoker<T> invoker) {
+		Map<String, T> result = new LinkedHashMap<String, T>();
+		if (keys == null || keys.isEmpty()) {
+			return result;
+		}
+		getInvalidator();
+		RegionStats stats = CacheStats.region(region);
+		Map<Object, Object> found = liveAll(EhCacheManager.getAll(region, keys));
+		List<String> misses = new ArrayList<String>();
+		for (String key : keys) {
+			if (key == null) {
+				continue;
+			}
+			stats.access(key);
+			if (found.containsKey(key)) {
+				if (found.get(key) instanceof NullValue) {
+					stats.nullHit(1);
 				} else {
-					logger.debug("执行自动更新数据策略{} - {}", region, key);
-					String thread_name = String.format("CacheUpdater-%s-%s", region, key);
-					g_ThreadPool.execute(new Thread(thread_name) {
-						@Override
-						public void run() {
-							Object result = invoker.callback();
-							if (result != null) {
-								EhCacheManager.set(region, key, (Serializable) result);
-								RedisCacheManager.set(region, key, (Serializable) result);
+					stats.l1Hit(1);
+					if (invoker != null) {
+						REFRESHER.refreshAhead(region, key, singleInvoker(key, invoker));
+					}
+				}
+			} else {
+				misses.add(key);
+			}
+		}
+		if (!misses.isEmpty() && OffHeapCacheManager.isEnabled(region)) {
+			Map<Object, Object> offHeap = liveAll(OffHeapCacheManager.getAll(region, misses));
+			if (!offHeap.isEmpty()) {
+				Map<Object, Serializable> fill = new HashMap<Object, Serializable>();
+				for (Map.Entry<Object, Object> entry : offHeap.entrySet()) {
+					fill.put(entry.getKey(), (Serializable) entry.getValue());
+				}
+				EhCacheManager.setAll(region, fill);
+				stats.offHeapHit(offHeap.size());
+				found.putAll(offHeap);
+				misses.removeAll(offHeap.keySet());
+			}
+		}
+		if (!misses.isEmpty()) {
+			logger.debug("在L1缓存中未找到{}个key！{}", misses.size(), region);
+			long start = System.nanoTime();
+			Map<Object, Object> l2 = liveAll(RedisCacheManager.getAll(region, misses));
+			stats.l2Fetched(System.nanoTime() - start);
+			if (!l2.isEmpty()) {
+				Map<Object, Serializable> fill = new HashMap<Object, Serializable>();
+				for (Map.Entry<Object, Object> entry : l2.entrySet()) {
+					fill.put(entry.getKey(), (Serializable) entry.getValue());
+					if (entry.getValue() instanceof NullValue) {
+						stats.nullHit(1);
+					} else {
+						stats.l2Hit(1);
+						REFRESHER.loaded(region, (String) entry.getKey());
+					}
+				}
+				EhCacheManager.setAll(region, fill);
+				OffHeapCacheManager.setAll(region, fill);
+				found.putAll(l2);
+				misses.removeAll(l2.keySet());
+			}
+		}
+		stats.miss(misses.size());
+		if (!misses.isEmpty() && invoker != null) {
+			logger.debug("在L2缓存中未找到{}个key！{}", misses.size(), region);
+			long start = System.nanoTime();
+			Map<String, T> loaded;
+			try {
+				loaded = invoker.callback(misses);
+			} catch (RuntimeException e) {
+				stats.loadFailed();
+				throw e;
+			}
+			stats.loaded(System.nanoTime() - start);
+			if (loaded != null && !loaded.isEmpty()) {
+				storeAll(region, loaded, System.nanoTime() - start);
+				found.putAll(loaded);
+			}
+			List<String> absent = new ArrayList<String>();
+			for (String key : misses) {
+				if (loaded == null || loaded.get(key) == null) {
+					absent.add(key);
+				}
+			}
+			storeNulls(region, absent);
+		}
+		for (String key : keys) {
+			Object value = found.get(key);
+			if (value != null && !(value instanceof NullValue)) {
+				result.put(key, (T) value);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 批量写入两级缓存并记录加载时间
+	 *
+	 * @param region
+	 * @param values
+	 * @param costNanos
+	 *            整批加载耗时(纳秒)
+	 */
+	private static void storeAll(String region, Map<String, ?> values, long costNanos) {
+		Map<String, Serializable> data = new HashMap<String, Serializable>();
+		for (Map.Entry<String, ?> entry : values.entrySet()) {
+			if (entry.getKey() != null && entry.getValue() != null) {
+				data.put(entry.getKey(), (Serializable) entry.getValue());
+			}
+		}
+		EhCacheManager.setAll(region, data);
+		OffHeapCacheManager.setAll(region, data);
+		RedisCacheManager.setAll(region, data);
+		for (Map.Entry<String, Serializable> entry : data.entrySet()) {
+			STALE.put(Arrays.asList(region, entry.getKey()), entry.getValue());
+			REFRESHER.loaded(region, entry.getKey(), costNanos);
+		}
+	}
+
+	/**
+	 * 过期的空值标记视为未命中
+	 *
+	 * @param value
+	 * @return 已过期的空值标记返回null，其他原样返回
+	 */
+	private static Object live(Object value) {
+		return (value instanceof NullValue && ((NullValue) value).expired()) ? null : value;
+	}
+
+	/**
+	 * 去掉过期的空值标记
+	 *
+	 * @param values
+	 * @return
+	 */
+	private static Map<Object, Object> liveAll(Map<Object, Object> values) {
+		Map<Object, Object> result = new HashMap<Object, Object>(values);
+		result.values().removeIf(value -> live(value) == null);
+		return result;
+	}
+
+	/**
+	 * region的空值缓存时间(秒)
+	 *
+	 * @param region
+	 * @return
+	 */
+	private static int getNullTtlSeconds(String region) {
+		Integer ttl = NULL_TTLS.get(region);
+		if (ttl == null) {
+			ttl = NumberUtils.toInt(PropertiesUtil.getProperties().getProperty("cache.null_ttl_seconds." + region),
+					NULL_TTL_SECONDS);
+			NULL_TTLS.putIfAbsent(region, ttl);
+		}
+		return ttl;
+	}
+
+	/**
+	 * 在各级缓存中写入空值标记
+	 *
+	 * @param region
+	 * @param keys
+	 */
+	private static void storeNulls(String region, Collection<String> keys) {
+		int ttl = getNullTtlSeconds(region);
+		if (ttl <= 0 || keys.isEmpty()) {
+			return;
+		}
+		NullValue value = new NullValue(System.currentTimeMillis() + ttl * 1000L);
+		Map<String, Serializable> data = new HashMap<String, Serializable>();
+		for (String key : keys) {
+			data.put(key, value);
+		}
+		EhCacheManager.setAll(region, data);
+		OffHeapCacheManager.setAll(region, data);
+		RedisCacheManager.setAll(region, data);
+	}
+
+	/**
+	 * 把批量回调适配为单个key的回调，用于后台刷新
+	 *
+	 * @param key
+	 * @param invoker
+	 * @return
+	 */
+	private static <T> ICacheInvoker<T> singleInvoker(final String key, final IBatchCacheInvoker<T> invoker) {
+		return new ICacheInvoker<T>() {
+			@Override
+			public T callback() {
+				Map<String, T> loaded = invoker.callback(Collections.singletonList(key));
+				return loaded == null ? null : loaded.get(key);
+			}
+		};
+	}
+
+	/**
+	 * 获取缓存刷新器，用于查看刷新队列和丢弃数
+	 *
+	 * @return
+	 */
+	public static CacheRefresher getRefresher() {
+		return REFRESHER;
+	}
+
+	/**
+	 * 写入两级缓存并记录加载时间
+	 *
+	 * @param region
+	 * @param key
+	 * @param value
+	 * @param costNanos
+	 *            加载耗时(纳秒)
+	 */
+	static void store(String region, String key, Object value, long costNanos) {
+		if (value != null) {
+			STALE.put(Arrays.asList(region, key), value);
+		}
+		EhCacheManager.set(region, key, (Serializable) value);
+		OffHeapCacheManager.set(region, key, (Serializable) value);
+		RedisCacheManager.set(region, key, (Serializable) value);
+		REFRESHER.loaded(region, key, costNanos);
+	}
+
+	/**
+	 * 两级缓存都未命中时加载数据，同一个(region, key)同时只有一个调用方执行回调，其他调用方等待其结果；
+	 * 等待超时或加载失败时返回最近一次加载的旧数据；没有旧数据时加载失败抛出原异常，等待超时或被中断抛出CacheException，
+	 * 不绕过合并自行加载，避免加载缓慢时所有等待方同时访问数据库
+	 *
+	 * @param region
+	 *            缓存分区
+	 * @param key
+	 *            缓存key
+	 * @param invoker
+	 *            回调方法
+	 * @return 加载的数据
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> T load(String region, String key, ICacheInvoker<T> invoker) {
+		List<String> flightKey = Arrays.asList(region, key);
+		CompletableFuture<Object> flight = new CompletableFuture<Object>();
+		CompletableFuture<Object> running = IN_FLIGHT.putIfAbsent(flightKey, flight);
+		if (running == null) {
+			try {
+				T data;
+				long start = System.nanoTime();
+				try {
+					data = invoker.callback();
+				} catch (RuntimeException e) {
+					CacheStats.region(region).loadFailed();
+					flight.completeExceptionally(e);
+					throw e;
+				}
+				CacheStats.region(region).loaded(System.nanoTime() - start);
+				// 先通知等待方，写缓存失败不影响其结果
+				flight.complete(data);
+				storeLoaded(region, key, data, System.nanoTime() - start);
+				return data;
+			} finally {
+				IN_FLIGHT.remove(flightKey, flight);
+			}
+		}
+		logger.debug("等待正在进行的加载{} - {}", region, key);
+		try {
+			return (T) running.get(LOAD_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			Object stale = STALE.getIfPresent(flightKey);
+			if (stale != null) {
+				logger.warn("等待加载超时，使用旧数据{} - {}", region, key);
+				return (T) stale;
+			}
+			throw new CacheException("Timed out after " + LOAD_WAIT_MILLIS + "ms waiting for " + region + " - "
+					+ key, e);
+		} catch (ExecutionException e) {
+			Object stale = STALE.getIfPresent(flightKey);
+			if (stale != null) {
+				logger.warn("加载失败，使用旧数据{} - {}", region, key);
+				return (T) stale;
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new CacheException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			Object stale = STALE.getIfPresent(flightKey);
+			if (stale != null) {
+				logger.warn("等待加载被中断，使用旧数据{} - {}", region, key);
+				return (T) stale;
+			}
+			throw new CacheException("Interrupted while waiting for " + region + " - " + key, e);
+		}
+	}
+
+	/**
+	 * 在加载线程池中加载数据，同一个(region, key)同时只有一次加载，加载失败时返回最近一次加载的旧数据
+	 *
+	 * @param region
+	 * @param key
+	 * @param invoker
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> CompletableFuture<T> loadAsync(final String region, final String key,
+			final ICacheInvoker<T> invoker) {
+		final List<String> flightKey = Arrays.asList(region, key);
+		final CompletableFuture<Object> flight = new CompletableFuture<Object>();
+		CompletableFuture<Object> running = IN_FLIGHT.putIfAbsent(flightKey, flight);
+		if (running == null) {
+			running = flight;
+			try {
+				LOADER_EXECUTOR.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							long start = System.nanoTime();
+							T data;
+							try {
+								data = invoker.callback();
+							} catch (RuntimeException e) {
+								CacheStats.region(region).loadFailed();
+								throw e;
 							}
+							CacheStats.region(region).loaded(System.nanoTime() - start);
+							flight.complete(data);
+							storeLoaded(region, key, data, System.nanoTime() - start);
+						} catch (RuntimeException e) {
+							if (!flight.completeExceptionally(e)) {
+								logger.error("写入缓存失败{} - {}", region, key, e);
+							}
+						} finally {
+							IN_FLIGHT.remove(flightKey, flight);
 						}
-					});
-				}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				IN_FLIGHT.remove(flightKey, flight);
+				flight.completeExceptionally(e);
 			}
+		} else {
+			logger.debug("等待正在进行的加载{} - {}", region, key);
+		}
+		return (CompletableFuture<T>) running.handle((data, error) -> {
+			if (error == null) {
+				return data;
+			}
+			Object stale = STALE.getIfPresent(flightKey);
+			if (stale != null) {
+				logger.warn("加载失败，使用旧数据{} - {}", region, key);
+				return stale;
+			}
+			throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+		});
+	}
+
+	/**
+	 * 写入回调加载的结果，null写入空值标记
+	 *
+	 * @param region
+	 * @param key
+	 * @param data
+	 * @param costNanos
+	 */
+	private static void storeLoaded(String region, String key, Object data, long costNanos) {
+		if (data == null) {
+			storeNulls(region, Collections.singletonList(key));
+		} else {
+			store(region, key, data, costNanos);
 		}
-		return data;
 	}
 
+	private static <T> CompletableFuture<T> failed(Throwable error) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	/**
+	 * 创建异步线程池，队列满时拒绝任务，不在调用线程中执行
+	 *
+	 * @param property
+	 *            线程数的配置项
+	 * @param defaultThreads
+	 * @param nameFormat
+	 * @return
+	 */
+	private static ExecutorService createExecutor(String property, int defaultThreads, String nameFormat) {
+		int threads = Math.max(1, NumberUtils.toInt(PropertiesUtil.getProperties().getProperty(property),
+				defaultThreads));
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(threads * 16), new ThreadFactoryBuilder().setDaemon(true)
+						.setNameFormat(nameFormat).build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * 清除本节点的缓存，下次读取时从L2取最新数据
+	 *
+	 * @param region
+	 * @param key
+	 */
 	public static void update(final String region, final String key) {
-		EhCacheManager.evict(region, key);
+		evictLocal(region, key);
 	}
 
 	public static void evict(final String region, final String key) {
-		EhCacheManager.evict(region, key);
+		CacheStats.region(region).explicitEvicted();
 		RedisCacheManager.evict(region, key);
+		evictAndPublish(region, key);
 	}
 
 	public static void updateNow(final String region, final String key, final Serializable value) {
 		RedisCacheManager.set(region, key, value);
-		EhCacheManager.set(region, key, value);
+		updateAndPublish(region, key, value);
 	}
 
-	static class CacheUpdater extends ThreadPoolExecutor {
-
-		private List<String> runningThreadNames = new Vector<>();
+	/**
+	 * 清除本节点的缓存并通知其他节点清除，L2由调用方处理
+	 *
+	 * @param region
+	 * @param key
+	 */
+	static void evictAndPublish(String region, String key) {
+		evictLocal(region, key);
+		getInvalidator().invalidate(region, key);
+	}
 
-		public CacheUpdater() {
-			super(0, 20, 5, TimeUnit.SECONDS, new ArrayBlockingQueue<>(20),
-					new ThreadPoolExecutor.DiscardOldestPolicy());
-		}
+	/**
+	 * 写入本节点的缓存并通知其他节点清除旧数据，L2由调用方处理
+	 *
+	 * @param region
+	 * @param key
+	 * @param value
+	 */
+	static void updateAndPublish(String region, String key, Serializable value) {
+		OffHeapCacheManager.set(region, key, value);
+		EhCacheManager.set(region, key, value);
+		REFRESHER.loaded(region, key);
+		getInvalidator().invalidate(region, key);
+	}
 
-		public void execute(Thread command) {
-			if (runningThreadNames.contains(command.getName())) {
-				logger.warn("{} ===================> Running.", command.getName());
-				return;
+	/**
+	 * 改用指定的失效消息通道，关闭原来的
+	 *
+	 * @param bus
+	 *            为null时不发布也不接收
+	 */
+	static void setInvalidationBus(InvalidationBus bus) {
+		synchronized (CacheHelper.class) {
+			if (invalidator != null) {
+				invalidator.close();
 			}
-			logger.debug("{} ===================> Started.", command.getName());
-			super.execute(command);
+			invalidator = new CacheInvalidator(bus, INVALIDATION_LISTENER);
 		}
+	}
 
-		@Override
-		protected void afterExecute(Runnable r, Throwable t) {
-			super.afterExecute(r, t);
-			Thread thread = (Thread) r;
-			runningThreadNames.remove(thread.getName());
-			logger.debug("{} ===================> Finished.", thread.getName());
+	/**
+	 * 获取失效通知，第一次调用时按配置创建并开始接收其他节点的消息
+	 *
+	 * @return
+	 */
+	static CacheInvalidator getInvalidator() {
+		CacheInvalidator current = invalidator;
+		if (current == null) {
+			synchronized (CacheHelper.class) {
+				current = invalidator;
+				if (current == null) {
+					current = new CacheInvalidator(INVALIDATION_LISTENER);
+					invalidator = current;
+				}
+			}
 		}
+		return current;
+	}
 
+	/**
+	 * 清除本节点的L1、堆外缓存及加载记录
+	 *
+	 * @param region
+	 * @param key
+	 */
+	private static void evictLocal(String region, String key) {
+		EhCacheManager.evict(region, key);
+		OffHeapCacheManager.evict(region, key);
+		STALE.invalidate(Arrays.asList(region, key));
+		REFRESHER.forget(region, key);
 	}
 }
@@ -0,0 +1,171 @@
+package com.haozileung.infra.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 跨节点L1缓存失效
+ * <p>
+ * 本节点清除或更新的key先合并，等待cache.invalidation.batch_millis毫秒或攒满cache.invalidation.
+ * batch_size个后一次发布，其他节点收到后清除各自的L1。 通道由cache.invalidation配置：redis(默认)、
+ * loopback(进程内)或none(关闭)；cache.invalidation.enabled=false时同样关闭
+ * </p>
+ */
+public class CacheInvalidator {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheInvalidator.class);
+
+	private final InvalidationBus bus;
+
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * 合并等待时间(毫秒)
+	 */
+	private final long batchMillis;
+
+	/**
+	 * 每批最多的key数量，攒满立即发布
+	 */
+	private final int batchSize;
+
+	private final Object lock = new Object();
+
+	/**
+	 * 待发布的key
+	 */
+	private Map<String, Set<String>> pending = new HashMap<String, Set<String>>();
+
+	private int pendingCount;
+
+	private boolean scheduled;
+
+	private final Runnable flushTask = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	public CacheInvalidator(IInvalidationListener listener) {
+		this(createBus(), listener);
+	}
+
+	/**
+	 * @param bus
+	 *            失效消息通道，为null时不发布也不接收
+	 * @param listener
+	 *            收到其他节点的失效消息时调用
+	 */
+	public CacheInvalidator(InvalidationBus bus, IInvalidationListener listener) {
+		this.bus = bus;
+		this.batchMillis = NumberUtils.toLong(
+				PropertiesUtil.getProperties().getProperty("cache.invalidation.batch_millis"), 10);
+		this.batchSize = Math.max(1, NumberUtils.toInt(
+				PropertiesUtil.getProperties().getProperty("cache.invalidation.batch_size"), 500));
+		if (bus == null) {
+			this.executor = null;
+			return;
+		}
+		this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+				.setNameFormat("cache-invalidator-%d").build());
+		bus.start(listener);
+	}
+
+	private static InvalidationBus createBus() {
+		if ("false".equalsIgnoreCase(StringUtils.trim(PropertiesUtil.getProperties().getProperty(
+				"cache.invalidation.enabled")))) {
+			return null;
+		}
+		String type = StringUtils.trim(PropertiesUtil.getProperties().getProperty("cache.invalidation", "redis"));
+		if ("none".equalsIgnoreCase(type)) {
+			return null;
+		}
+		if ("loopback".equalsIgnoreCase(type)) {
+			return new LoopbackInvalidationBus();
+		}
+		return new RedisInvalidationBus(PropertiesUtil.getProperties().getProperty("cache.invalidation.channel",
+				"cache:invalidation"));
+	}
+
+	/**
+	 * 通知其他节点清除L1中的key
+	 *
+	 * @param region
+	 * @param key
+	 */
+	public void invalidate(String region, String key) {
+		if (bus == null || region == null || key == null) {
+			return;
+		}
+		boolean flushNow;
+		boolean schedule = false;
+		synchronized (lock) {
+			Set<String> keys = pending.get(region);
+			if (keys == null) {
+				keys = new LinkedHashSet<String>();
+				pending.put(region, keys);
+			}
+			if (keys.add(key)) {
+				pendingCount++;
+			}
+			flushNow = pendingCount >= batchSize;
+			if (!flushNow && !scheduled) {
+				scheduled = true;
+				schedule = true;
+			}
+		}
+		if (flushNow) {
+			executor.execute(flushTask);
+		} else if (schedule) {
+			executor.schedule(flushTask, batchMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * 发布已合并的key
+	 */
+	public void flush() {
+		Map<String, Set<String>> batch;
+		synchronized (lock) {
+			if (pendingCount == 0) {
+				return;
+			}
+			batch = pending;
+			pending = new HashMap<String, Set<String>>();
+			pendingCount = 0;
+			scheduled = false;
+		}
+		try {
+			bus.publish(batch);
+		} catch (RuntimeException e) {
+			logger.error("发布缓存失效消息失败{}", batch.keySet(), e);
+		}
+	}
+
+	/**
+	 * 发布剩余的key并关闭通道
+	 */
+	public void close() {
+		if (bus == null) {
+			return;
+		}
+		flush();
+		executor.shutdown();
+		bus.close();
+	}
+
+}
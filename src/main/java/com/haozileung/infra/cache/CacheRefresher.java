@@ -0,0 +1,364 @@
+package com.haozileung.infra.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 缓存提前刷新
+ * <p>
+ * 记录每个(region, key)的加载时间，访问时已超过过期时间的一定比例则在后台重新加载，热点数据在过期前就被刷新。
+ * L1命中时按L1的过期时间计算，L1未配置过期时间时按L2的；L2命中时按L2的过期时间计算，L2不过期时每次命中都刷新。
+ * 同一个key同时只有一个刷新任务，每个region的并发刷新数有上限，超过上限或队列已满的刷新被丢弃并计数，下次访问时会再次触发
+ * </p>
+ * <p>
+ * 另外按XFetch算法做概率性提前刷新：每次访问以 cost * beta * -ln(random) &gt;= 剩余时间 决定是否刷新，
+ * 越接近过期、加载越耗时的数据越早被刷新，多个节点的刷新时间也随之分散
+ * </p>
+ */
+public class CacheRefresher {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheRefresher.class);
+
+	/**
+	 * 已加载的(region, key)，长时间未访问的不再跟踪
+	 */
+	private final com.google.common.cache.Cache<List<String>, Entry> entries;
+
+	/**
+	 * 每个region的并发刷新许可
+	 */
+	private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<String, Semaphore>();
+
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * 超过过期时间的这个比例后提前刷新
+	 */
+	private final double factor;
+
+	/**
+	 * 每个region的最大并发刷新数
+	 */
+	private final int regionConcurrency;
+
+	/**
+	 * XFetch的beta，越大越早刷新，不大于0时关闭
+	 */
+	private final double beta;
+
+	private final AtomicLong scheduled = new AtomicLong();
+
+	private final AtomicLong completed = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong early = new AtomicLong();
+
+	public CacheRefresher() {
+		int threads = Math.max(1, getInt("cache.refresh_threads", 4));
+		this.factor = NumberUtils.toDouble(PropertiesUtil.getProperties().getProperty("cache.refresh_ahead_factor"),
+				0.75);
+		this.regionConcurrency = Math.max(1, getInt("cache.refresh_region_concurrency", 2));
+		this.beta = NumberUtils.toDouble(PropertiesUtil.getProperties().getProperty("cache.xfetch_beta"), 1.0);
+		this.entries = CacheBuilder.newBuilder().maximumSize(getInt("cache.refresh_max_keys", 10000))
+				.expireAfterAccess(getInt("cache.refresh_idle_seconds", 600), TimeUnit.SECONDS).build();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(1, getInt("cache.refresh_queue_size", 100))),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("cache-refresher-%d").build());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	private static int getInt(String name, int defaultValue) {
+		return NumberUtils.toInt(PropertiesUtil.getProperties().getProperty(name), defaultValue);
+	}
+
+	/**
+	 * 记录数据已加载，加载耗时不变
+	 *
+	 * @param region
+	 * @param key
+	 */
+	public void loaded(String region, String key) {
+		loaded(region, key, -1);
+	}
+
+	/**
+	 * 记录数据已加载
+	 *
+	 * @param region
+	 * @param key
+	 * @param costNanos
+	 *            加载耗时(纳秒)，小于0时不更新
+	 */
+	public void loaded(String region, String key, long costNanos) {
+		Entry entry = entry(Arrays.asList(region, key));
+		entry.loadedAt = System.currentTimeMillis();
+		if (costNanos >= 0) {
+			entry.cost = costNanos;
+		}
+	}
+
+	/**
+	 * 移除key的加载记录
+	 *
+	 * @param region
+	 * @param key
+	 */
+	public void forget(String region, String key) {
+		entries.invalidate(Arrays.asList(region, key));
+	}
+
+	/**
+	 * L1命中时调用，数据已超过过期时间的factor比例，或XFetch判定需要时提前刷新
+	 *
+	 * @param region
+	 * @param key
+	 * @param invoker
+	 *            回调方法
+	 */
+	public void refreshAhead(String region, String key, ICacheInvoker<?> invoker) {
+		long ttl = EhCacheManager.getTimeToLiveSeconds(region);
+		if (ttl <= 0) {
+			ttl = RedisCacheManager.getTimeToLiveSeconds(region);
+		}
+		refreshAhead(region, key, invoker, ttl * 1000L);
+	}
+
+	/**
+	 * L2命中时调用，按L2的过期时间判断是否提前刷新，L2不过期时立即刷新
+	 *
+	 * @param region
+	 * @param key
+	 * @param invoker
+	 *            回调方法
+	 */
+	public void refreshRemote(String region, String key, ICacheInvoker<?> invoker) {
+		long ttl = RedisCacheManager.getTimeToLiveSeconds(region) * 1000L;
+		if (ttl <= 0) {
+			refresh(region, key, invoker);
+		} else {
+			refreshAhead(region, key, invoker, ttl);
+		}
+	}
+
+	/**
+	 * @param ttl
+	 *            过期时间(毫秒)，不大于0时不刷新
+	 */
+	private void refreshAhead(String region, String key, ICacheInvoker<?> invoker, long ttl) {
+		if (ttl <= 0) {
+			return;
+		}
+		List<String> entryKey = Arrays.asList(region, key);
+		Entry entry = entries.getIfPresent(entryKey);
+		if (entry == null) {
+			// 加载记录已淘汰，从现在开始计时
+			entries.asMap().putIfAbsent(entryKey, new Entry());
+			return;
+		}
+		long age = System.currentTimeMillis() - entry.loadedAt;
+		if (age >= ttl * factor) {
+			submit(region, key, invoker, entry);
+		} else if (xfetch(entry, ttl - age)) {
+			early.incrementAndGet();
+			submit(region, key, invoker, entry);
+		}
+	}
+
+	/**
+	 * XFetch判断是否提前刷新
+	 *
+	 * @param entry
+	 * @param remaining
+	 *            剩余时间(毫秒)
+	 * @return
+	 */
+	private boolean xfetch(Entry entry, long remaining) {
+		if (beta <= 0 || entry.cost <= 0) {
+			return false;
+		}
+		// 1 - nextDouble()取值(0, 1]，避免log(0)
+		double gap = -entry.cost * beta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+		return gap >= remaining * 1000000.0;
+	}
+
+	/**
+	 * 立即在后台刷新
+	 *
+	 * @param region
+	 * @param key
+	 * @param invoker
+	 *            回调方法
+	 */
+	public void refresh(String region, String key, ICacheInvoker<?> invoker) {
+		submit(region, key, invoker, entry(Arrays.asList(region, key)));
+	}
+
+	/**
+	 * 获取或创建key的加载记录，并发创建时只保留一个，不替换已有记录的刷新状态
+	 *
+	 * @param entryKey
+	 * @return
+	 */
+	private Entry entry(List<String> entryKey) {
+		Entry entry = entries.getIfPresent(entryKey);
+		if (entry == null) {
+			Entry created = new Entry();
+			entry = entries.asMap().putIfAbsent(entryKey, created);
+			if (entry == null) {
+				entry = created;
+			}
+		}
+		return entry;
+	}
+
+	private void submit(final String region, final String key, final ICacheInvoker<?> invoker, final Entry entry) {
+		if (!entry.running.compareAndSet(false, true)) {
+			return;
+		}
+		final Semaphore permit = getPermit(region);
+		if (!permit.tryAcquire()) {
+			entry.running.set(false);
+			dropped.incrementAndGet();
+			logger.debug("{}并发刷新数已达上限，丢弃{}", region, key);
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						long start = System.nanoTime();
+						Object result = invoker.callback();
+						if (result != null) {
+							CacheHelper.store(region, key, result, System.nanoTime() - start);
+						}
+						completed.incrementAndGet();
+					} catch (RuntimeException e) {
+						failed.incrementAndGet();
+						logger.error("刷新缓存失败{} - {}", region, key, e);
+					} finally {
+						entry.running.set(false);
+						permit.release();
+					}
+				}
+			});
+			scheduled.incrementAndGet();
+		} catch (RejectedExecutionException e) {
+			entry.running.set(false);
+			permit.release();
+			dropped.incrementAndGet();
+			logger.debug("刷新队列已满，丢弃{} - {}", region, key);
+		}
+	}
+
+	private Semaphore getPermit(String region) {
+		Semaphore permit = permits.get(region);
+		if (permit == null) {
+			Semaphore created = new Semaphore(regionConcurrency);
+			permit = permits.putIfAbsent(region, created);
+			if (permit == null) {
+				permit = created;
+			}
+		}
+		return permit;
+	}
+
+	/**
+	 * 等待执行的刷新任务数
+	 *
+	 * @return
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * 正在执行的刷新任务数
+	 *
+	 * @return
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * 跟踪的key数
+	 *
+	 * @return
+	 */
+	public long getTrackedKeys() {
+		return entries.size();
+	}
+
+	public long getScheduledCount() {
+		return scheduled.get();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * 由XFetch提前触发的刷新数
+	 *
+	 * @return
+	 */
+	public long getEarlyCount() {
+		return early.get();
+	}
+
+	/**
+	 * 因region并发上限或队列已满被丢弃的刷新数
+	 *
+	 * @return
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * 单个key的加载记录
+	 */
+	static class Entry {
+
+		/**
+		 * 最近一次加载的时间
+		 */
+		volatile long loadedAt = System.currentTimeMillis();
+
+		/**
+		 * 最近一次加载的耗时(纳秒)
+		 */
+		volatile long cost;
+
+		/**
+		 * 是否有刷新任务在执行
+		 */
+		final AtomicBoolean running = new AtomicBoolean();
+	}
+}
@@ -0,0 +1,177 @@
+package com.haozileung.infra.cache;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 缓存统计
+ * <p>
+ * 按region记录各级命中、未命中、L2读取和加载耗时、编码后大小及热点key，通过JMX(com.haozileung.infra.cache:type=
+ * CacheStats)和/druid/cache.json(不含热点key)查看。 cache.stats.hot_keys为返回的热点key数量(默认20)，
+ * cache.stats.hot_key_sample为热点key的采样间隔(默认8)
+ * </p>
+ */
+public class CacheStats {
+
+	private static final Logger logger = LoggerFactory.getLogger(CacheStats.class);
+
+	private static final String OBJECT_NAME = "com.haozileung.infra.cache:type=CacheStats";
+
+	private static final int HOT_KEYS = NumberUtils.toInt(
+			PropertiesUtil.getProperties().getProperty("cache.stats.hot_keys"), 20);
+
+	private static final int HOT_KEY_SAMPLE = NumberUtils.toInt(
+			PropertiesUtil.getProperties().getProperty("cache.stats.hot_key_sample"), 8);
+
+	private static final ConcurrentMap<String, RegionStats> REGIONS = new ConcurrentHashMap<String, RegionStats>();
+
+	private static volatile long since = System.currentTimeMillis();
+
+	/**
+	 * 获取region的统计
+	 *
+	 * @param region
+	 * @return
+	 */
+	public static RegionStats region(String region) {
+		RegionStats stats = REGIONS.get(region);
+		if (stats == null) {
+			// 跟踪的key多于返回的数量，减少替换造成的误差
+			RegionStats created = new RegionStats(HOT_KEYS * 5, HOT_KEY_SAMPLE);
+			stats = REGIONS.putIfAbsent(region, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * 所有region的统计快照及刷新器状态
+	 *
+	 * @return
+	 */
+	public static Map<String, Object> snapshot() {
+		return snapshot(HOT_KEYS);
+	}
+
+	/**
+	 * 所有region的统计快照及刷新器状态
+	 *
+	 * @param topKeys
+	 *            每个region返回的热点key数量，为0时不返回热点key
+	 * @return
+	 */
+	public static Map<String, Object> snapshot(int topKeys) {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("since", since);
+		Map<String, Object> regions = new TreeMap<String, Object>();
+		for (Map.Entry<String, RegionStats> entry : REGIONS.entrySet()) {
+			Map<String, Object> region = entry.getValue().snapshot(topKeys);
+			OffHeapCache offHeap = OffHeapCacheManager.getCache(entry.getKey());
+			if (offHeap != null) {
+				Map<String, Object> tier = new LinkedHashMap<String, Object>();
+				tier.put("capacity", offHeap.getCapacity());
+				tier.put("usedBytes", offHeap.getUsedBytes());
+				tier.put("entries", offHeap.getEntryCount());
+				tier.put("evictions", offHeap.getEvictionCount());
+				region.put("offHeap", tier);
+			}
+			regions.put(entry.getKey(), region);
+		}
+		map.put("regions", regions);
+		CacheRefresher refresher = CacheHelper.getRefresher();
+		Map<String, Object> refresh = new LinkedHashMap<String, Object>();
+		refresh.put("queueDepth", refresher.getQueueDepth());
+		refresh.put("active", refresher.getActiveCount());
+		refresh.put("trackedKeys", refresher.getTrackedKeys());
+		refresh.put("scheduled", refresher.getScheduledCount());
+		refresh.put("completed", refresher.getCompletedCount());
+		refresh.put("failed", refresher.getFailedCount());
+		refresh.put("early", refresher.getEarlyCount());
+		refresh.put("dropped", refresher.getDroppedCount());
+		map.put("refresher", refresh);
+		return map;
+	}
+
+	/**
+	 * region的统计快照
+	 *
+	 * @param region
+	 * @return 没有统计时返回null
+	 */
+	public static Map<String, Object> snapshot(String region) {
+		return snapshot(region, HOT_KEYS);
+	}
+
+	/**
+	 * region的统计快照
+	 *
+	 * @param region
+	 * @param topKeys
+	 *            返回的热点key数量，为0时不返回热点key
+	 * @return 没有统计时返回null
+	 */
+	public static Map<String, Object> snapshot(String region, int topKeys) {
+		RegionStats stats = REGIONS.get(region);
+		return stats == null ? null : stats.snapshot(topKeys);
+	}
+
+	static Map<String, RegionStats> getRegions() {
+		return REGIONS;
+	}
+
+	/**
+	 * 清零所有统计
+	 */
+	public static void reset() {
+		for (RegionStats stats : REGIONS.values()) {
+			stats.reset();
+		}
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * 注册JMX
+	 */
+	public static void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(new CacheStatsView(), name);
+			}
+		} catch (Exception e) {
+			logger.warn("注册缓存统计MBean失败", e);
+		}
+	}
+
+	/**
+	 * 注销JMX
+	 */
+	public static void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			logger.warn("注销缓存统计MBean失败", e);
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package com.haozileung.infra.cache;
+
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+
+/**
+ * 缓存统计的JMX实现
+ */
+public class CacheStatsView implements CacheStatsViewMBean {
+
+	@Override
+	public String[] getRegions() {
+		return CacheStats.getRegions().keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public long getHitCount() {
+		long hits = 0;
+		for (RegionStats stats : CacheStats.getRegions().values()) {
+			hits += stats.getHitCount();
+		}
+		return hits;
+	}
+
+	@Override
+	public long getMissCount() {
+		long misses = 0;
+		for (RegionStats stats : CacheStats.getRegions().values()) {
+			misses += stats.getMissCount();
+		}
+		return misses;
+	}
+
+	@Override
+	public double getHitRatio() {
+		long hits = getHitCount();
+		long total = hits + getMissCount();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public int getRefreshQueueDepth() {
+		return CacheHelper.getRefresher().getQueueDepth();
+	}
+
+	@Override
+	public long getRefreshDroppedCount() {
+		return CacheHelper.getRefresher().getDroppedCount();
+	}
+
+	@Override
+	public String getSnapshot() {
+		return JSON.toJSONString(CacheStats.snapshot());
+	}
+
+	@Override
+	public String regionSnapshot(String region) {
+		Map<String, Object> snapshot = CacheStats.snapshot(region);
+		return snapshot == null ? null : JSON.toJSONString(snapshot);
+	}
+
+	@Override
+	public void reset() {
+		CacheStats.reset();
+	}
+
+}
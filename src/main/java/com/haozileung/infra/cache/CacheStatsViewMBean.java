@@ -0,0 +1,36 @@
+package com.haozileung.infra.cache;
+
+/**
+ * 缓存统计的JMX接口
+ */
+public interface CacheStatsViewMBean {
+
+	/**
+	 * @return 有统计的region
+	 */
+	String[] getRegions();
+
+	long getHitCount();
+
+	long getMissCount();
+
+	double getHitRatio();
+
+	int getRefreshQueueDepth();
+
+	long getRefreshDroppedCount();
+
+	/**
+	 * @return 所有统计的JSON
+	 */
+	String getSnapshot();
+
+	/**
+	 * @param region
+	 * @return region统计的JSON
+	 */
+	String regionSnapshot(String region);
+
+	void reset();
+
+}
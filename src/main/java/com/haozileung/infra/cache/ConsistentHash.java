@@ -0,0 +1,77 @@
+package com.haozileung.infra.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * 一致性哈希环
+ * <p>
+ * 每个节点按名称在环上放置若干虚拟节点，key顺时针落到第一个虚拟节点所属的节点。
+ * 节点的位置只与名称有关，增减一个节点时只有约1/N的key改变归属，其余key仍落在原节点
+ * </p>
+ *
+ * @param <T>
+ *            节点类型
+ */
+public class ConsistentHash<T> {
+
+	private static final HashFunction HASH = Hashing.murmur3_128();
+
+	private final TreeMap<Long, T> ring = new TreeMap<Long, T>();
+
+	private final Map<String, T> nodes;
+
+	/**
+	 * @param nodes
+	 *            节点名称到节点的映射，名称决定节点在环上的位置
+	 * @param virtualNodes
+	 *            每个节点的虚拟节点数，越大分布越均匀
+	 */
+	public ConsistentHash(Map<String, T> nodes, int virtualNodes) {
+		this.nodes = Collections.unmodifiableMap(new LinkedHashMap<String, T>(nodes));
+		int replicas = Math.max(1, virtualNodes);
+		for (Map.Entry<String, T> node : nodes.entrySet()) {
+			for (int i = 0; i < replicas; i++) {
+				ring.put(hash(node.getKey() + "#" + i), node.getValue());
+			}
+		}
+	}
+
+	private static long hash(String key) {
+		return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+	}
+
+	/**
+	 * key所属的节点
+	 *
+	 * @param key
+	 * @return 没有节点时返回null
+	 */
+	public T get(String key) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+		return (entry != null ? entry : ring.firstEntry()).getValue();
+	}
+
+	/**
+	 * 所有节点，按加入的顺序
+	 *
+	 * @return
+	 */
+	public Collection<T> getNodes() {
+		return nodes.values();
+	}
+
+	public int size() {
+		return nodes.size();
+	}
+}
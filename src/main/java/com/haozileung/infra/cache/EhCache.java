@@ -17,7 +17,11 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
@@ -40,6 +44,17 @@ public class EhCache implements Cache {
 		this.cache = cache;
 	}
 
+	/**
+	 * 缓存的过期时间(秒)，永不过期时返回0
+	 *
+	 * @return
+	 */
+	public long getTimeToLiveSeconds() {
+		if (cache.getCacheConfiguration().isEternal())
+			return 0;
+		return cache.getCacheConfiguration().getTimeToLiveSeconds();
+	}
+
 	@Override
 	@SuppressWarnings("rawtypes")
 	public List keys() throws CacheException {
@@ -71,6 +86,56 @@ public class EhCache implements Cache {
 		}
 	}
 
+	/**
+	 * Gets the values of the elements which match the given keys.
+	 *
+	 * @param keys
+	 *            the keys of the elements to return.
+	 * @return the values by key, keys not found or expired are absent
+	 * @throws CacheException
+	 */
+	@Override
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException {
+		try {
+			Map<Object, Object> values = new HashMap<Object, Object>();
+			for (Map.Entry<Object, Element> entry : cache.getAll(keys).entrySet()) {
+				if (entry.getValue() != null)
+					values.put(entry.getKey(), entry.getValue().getObjectValue());
+			}
+			return values;
+		} catch (IllegalStateException e) {
+			throw new CacheException(e);
+		} catch (net.sf.ehcache.CacheException e) {
+			throw new CacheException(e);
+		}
+	}
+
+	/**
+	 * Puts objects into the cache.
+	 *
+	 * @param values
+	 *            values by key
+	 * @throws CacheException
+	 *             if the {@link CacheManager} is shutdown or another
+	 *             {@link Exception} occurs.
+	 */
+	@Override
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException {
+		try {
+			List<Element> elements = new ArrayList<Element>(values.size());
+			for (Map.Entry<?, ? extends Serializable> entry : values.entrySet()) {
+				elements.add(new Element(entry.getKey(), entry.getValue()));
+			}
+			cache.putAll(elements);
+		} catch (IllegalArgumentException e) {
+			throw new CacheException(e);
+		} catch (IllegalStateException e) {
+			throw new CacheException(e);
+		} catch (net.sf.ehcache.CacheException e) {
+			throw new CacheException(e);
+		}
+	}
+
 	/**
 	 * Puts an object into the cache.
 	 *
@@ -133,6 +198,22 @@ public class EhCache implements Cache {
 		}
 	}
 
+	/**
+	 * Removes the elements which match the keys.
+	 *
+	 * @param keys
+	 *            the keys of the elements to remove
+	 * @throws CacheException
+	 */
+	@Override
+	public void removeAll(Collection<?> keys) throws CacheException {
+		try {
+			cache.removeAll(keys);
+		} catch (IllegalStateException e) {
+			throw new CacheException(e);
+		}
+	}
+
 	/**
 	 * Remove all elements in the cache, but leave the cache in a useable state.
 	 *
@@ -1,19 +1,31 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.haozileung.infra.utils.PropertiesUtil;
+
 /**
- * 缓存助手
+ * L1缓存助手
+ * <p>
+ * cache.l1.provider=local时使用进程内的LocalCacheProvider，默认使用EhCacheProvider
+ * </p>
  */
 public class EhCacheManager {
 
 	private final static Logger logger = LoggerFactory.getLogger(EhCacheManager.class);
-	private static CacheProvider provider;
+	/**
+	 * 启动完成后才赋值，读取时不加锁
+	 */
+	private static volatile CacheProvider provider;
 
-	public static void destroy() {
+	public static synchronized void destroy() {
 		if (provider != null) {
 			provider.stop();
 			provider = null;
@@ -22,12 +34,28 @@ public class EhCacheManager {
 	}
 
 	private final static Cache _GetCache(String cache_name) {
+		CacheProvider current = provider;
+		if (current == null) {
+			current = _GetProvider();
+		}
+		return current.buildCache(cache_name);
+	}
+
+	private final static synchronized CacheProvider _GetProvider() {
 		if (provider == null) {
-			provider = new EhCacheProvider();
-			provider.start();
+			CacheProvider created = createProvider();
+			created.start();
+			provider = created;
 			logger.info("EhCacheManager started...");
 		}
-		return provider.buildCache(cache_name);
+		return provider;
+	}
+
+	private static CacheProvider createProvider() {
+		String type = StringUtils.trim(PropertiesUtil.getProperties().getProperty("cache.l1.provider"));
+		if ("local".equalsIgnoreCase(type))
+			return new LocalCacheProvider();
+		return new EhCacheProvider();
 	}
 
 	/**
@@ -71,6 +99,58 @@ public class EhCacheManager {
 			_GetCache(name).put(key, value);
 	}
 
+	/**
+	 * 获取缓存的过期时间(秒)，未知或永不过期时返回0
+	 *
+	 * @param name
+	 * @return
+	 */
+	public final static long getTimeToLiveSeconds(String name) {
+		if (name != null) {
+			Cache cache = _GetCache(name);
+			if (cache instanceof EhCache)
+				return ((EhCache) cache).getTimeToLiveSeconds();
+			if (cache instanceof LocalCache)
+				return ((LocalCache) cache).getTimeToLiveSeconds();
+		}
+		return 0;
+	}
+
+	/**
+	 * 批量获取缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 * @return 命中的数据，未命中的key不在结果中
+	 */
+	public final static Map<Object, Object> getAll(String name, Collection<?> keys) {
+		if (name != null && keys != null && !keys.isEmpty())
+			return _GetCache(name).getAll(keys);
+		return new HashMap<Object, Object>();
+	}
+
+	/**
+	 * 批量写入缓存
+	 *
+	 * @param name
+	 * @param values
+	 */
+	public final static void setAll(String name, Map<?, ? extends Serializable> values) {
+		if (name != null && values != null && !values.isEmpty())
+			_GetCache(name).putAll(values);
+	}
+
+	/**
+	 * 批量清除缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 */
+	public final static void evictAll(String name, Collection<?> keys) {
+		if (name != null && keys != null && !keys.isEmpty())
+			_GetCache(name).removeAll(keys);
+	}
+
 	/**
 	 * 清除缓冲中的某个数据
 	 *
@@ -0,0 +1,230 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.parser.Feature;
+import com.alibaba.fastjson.util.ParameterizedTypeImpl;
+import com.google.common.collect.ImmutableSet;
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * fastjson编码，比Java序列化更小更快
+ * <p>
+ * 数据为 类名长度(2字节) + 类名 + JSON，JSON中不写类型信息，解码时按类名还原为原类型，字段按声明的类型还原，
+ * 声明为Object的字段解码后为JSONObject/JSONArray。 只支持基本包装类型、String、Date、BigDecimal/BigInteger
+ * 和cache.codec.fastjson.packages(默认com.haozileung.)下的类；ArrayList、LinkedList、HashSet、LinkedHashSet
+ * 的元素都是同一个上述类型时，类名写为 集合类名&lt;元素类名&gt;，按元素类型还原。Map、数组及其他类型的值返回null，改用Java序列化
+ * </p>
+ * <p>
+ * 解码时不识别@type，类名也必须在上述范围内，能写缓存的一方无法借此实例化任意类
+ * </p>
+ */
+public class FastjsonCacheCodec implements CacheCodec {
+
+	public static final byte ID = 2;
+
+	private static final Set<Class<?>> SCALARS = ImmutableSet.<Class<?>> of(String.class, Boolean.class,
+			Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class,
+			BigDecimal.class, BigInteger.class, Date.class);
+
+	/**
+	 * 可按元素类型编解码的集合
+	 */
+	private static final Set<Class<?>> COLLECTIONS = ImmutableSet.<Class<?>> of(ArrayList.class, LinkedList.class,
+			HashSet.class, LinkedHashSet.class);
+
+	private static final String[] PACKAGES = StringUtils.split(
+			PropertiesUtil.getProperties().getProperty("cache.codec.fastjson.packages", "com.haozileung."), ", ");
+
+	/**
+	 * fastjson按@type处理的key的各种写法
+	 */
+	private static final byte[][] TYPE_KEYS = { bytes("\"@type\""), bytes("\"\\u0040"), bytes("\"@\\") };
+
+	private static byte[] bytes(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	/**
+	 * 是否可以按此类型编解码
+	 *
+	 * @param clazz
+	 * @return
+	 */
+	static boolean isSupported(Class<?> clazz) {
+		if (SCALARS.contains(clazz)) {
+			return true;
+		}
+		if (clazz.isArray() || Collection.class.isAssignableFrom(clazz) || Map.class.isAssignableFrom(clazz)) {
+			return false;
+		}
+		for (String prefix : PACKAGES) {
+			if (clazz.getName().startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 集合元素的类型
+	 *
+	 * @param collection
+	 * @return 元素类型不同或不支持时返回null
+	 */
+	private static Class<?> elementType(Collection<?> collection) {
+		Class<?> type = null;
+		for (Object element : collection) {
+			if (element == null) {
+				continue;
+			}
+			if (type == null) {
+				type = element.getClass();
+			} else if (type != element.getClass()) {
+				return null;
+			}
+		}
+		if (type == null) {
+			// 空集合或只有null，元素类型不影响还原
+			return String.class;
+		}
+		return isSupported(type) ? type : null;
+	}
+
+	@Override
+	public byte[] encode(Serializable value) throws CacheException {
+		if (value == null) {
+			return null;
+		}
+		String className;
+		if (COLLECTIONS.contains(value.getClass())) {
+			Class<?> elementType = elementType((Collection<?>) value);
+			if (elementType == null) {
+				return null;
+			}
+			className = value.getClass().getName() + "<" + elementType.getName() + ">";
+		} else if (isSupported(value.getClass())) {
+			className = value.getClass().getName();
+		} else {
+			return null;
+		}
+		byte[] json;
+		try {
+			json = JSON.toJSONBytes(value);
+		} catch (JSONException e) {
+			throw new CacheException(e);
+		}
+		if (containsTypeKey(json, 0, json.length)) {
+			// 解码时会拒绝，改用Java序列化
+			return null;
+		}
+		byte[] name = bytes(className);
+		return ByteBuffer.allocate(2 + name.length + json.length).putShort((short) name.length).put(name).put(json)
+				.array();
+	}
+
+	@Override
+	public Object decode(byte[] data, int offset, int length) throws CacheException {
+		if (length < 2) {
+			throw new CacheException("Truncated fastjson cache data");
+		}
+		int nameLength = ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+		int start = offset + 2 + nameLength;
+		int jsonLength = length - 2 - nameLength;
+		if (jsonLength < 0) {
+			throw new CacheException("Truncated fastjson cache data");
+		}
+		String name = new String(data, offset + 2, nameLength, StandardCharsets.UTF_8);
+		Type type;
+		int bracket = name.indexOf('<');
+		if (bracket > 0 && name.endsWith(">")) {
+			Class<?> collectionType = forName(name.substring(0, bracket));
+			if (!COLLECTIONS.contains(collectionType)) {
+				throw new CacheException("Class not allowed for fastjson cache codec: " + name);
+			}
+			type = new ParameterizedTypeImpl(new Type[] { allowed(name.substring(bracket + 1, name.length() - 1)) },
+					null, collectionType);
+		} else {
+			type = allowed(name);
+		}
+		if (containsTypeKey(data, start, jsonLength)) {
+			throw new CacheException("Unexpected @type in fastjson cache data of " + name);
+		}
+		try {
+			return JSON.parseObject(data, start, jsonLength, StandardCharsets.UTF_8.newDecoder(), type,
+					Feature.DisableSpecialKeyDetect);
+		} catch (JSONException e) {
+			throw new CacheException(e);
+		}
+	}
+
+	private static Class<?> forName(String name) throws CacheException {
+		try {
+			return Class.forName(name, false, FastjsonCacheCodec.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new CacheException(e);
+		}
+	}
+
+	/**
+	 * 加载允许按fastjson解码的类
+	 *
+	 * @param name
+	 * @return
+	 * @throws CacheException
+	 */
+	private static Class<?> allowed(String name) throws CacheException {
+		Class<?> clazz = forName(name);
+		if (!isSupported(clazz)) {
+			throw new CacheException("Class not allowed for fastjson cache codec: " + name);
+		}
+		return clazz;
+	}
+
+	private static boolean containsTypeKey(byte[] data, int offset, int length) {
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			if (data[i] != '"') {
+				continue;
+			}
+			for (byte[] key : TYPE_KEYS) {
+				if (i + key.length <= end && matches(data, i, key)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(byte[] data, int offset, byte[] key) {
+		for (int i = 0; i < key.length; i++) {
+			if (data[offset + i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
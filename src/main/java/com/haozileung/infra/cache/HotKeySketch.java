@@ -0,0 +1,154 @@
+package com.haozileung.infra.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点key统计，Space-Saving算法
+ * <p>
+ * 最多跟踪capacity个key，已满时新key替换计数最小的key并继承其计数，计数的高估量不超过被替换时的最小计数(记为error)
+ * </p>
+ * <p>
+ * key按hash分到多个分段，每段独立统计并各自加锁，不同key的访问互不等待，替换时只扫描本段的少量计数
+ * </p>
+ */
+public class HotKeySketch {
+
+	/**
+	 * 最多的分段数
+	 */
+	private static final int MAX_STRIPES = 16;
+
+	private final Stripe[] stripes;
+
+	public HotKeySketch(int capacity) {
+		capacity = Math.max(1, capacity);
+		int count = 1;
+		while (count < MAX_STRIPES && count < Runtime.getRuntime().availableProcessors() * 2
+				&& count * 2 <= capacity) {
+			count <<= 1;
+		}
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe((capacity + count - 1) / count);
+		}
+	}
+
+	/**
+	 * 记录一次访问
+	 *
+	 * @param key
+	 * @param weight
+	 *            本次计数，按采样率放大
+	 */
+	public void offer(String key, long weight) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		stripes[h & (stripes.length - 1)].offer(key, weight);
+	}
+
+	/**
+	 * 访问次数最多的key
+	 *
+	 * @param n
+	 * @return 按次数从大到小，每项包含key、count和error
+	 */
+	public List<Map<String, Object>> top(int n) {
+		List<Map.Entry<String, Counter>> entries = new ArrayList<Map.Entry<String, Counter>>();
+		for (Stripe stripe : stripes) {
+			stripe.copyTo(entries);
+		}
+		Collections.sort(entries, new Comparator<Map.Entry<String, Counter>>() {
+			@Override
+			public int compare(Map.Entry<String, Counter> o1, Map.Entry<String, Counter> o2) {
+				return Long.compare(o2.getValue().count, o1.getValue().count);
+			}
+		});
+		List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < n && i < entries.size(); i++) {
+			Map<String, Object> item = new LinkedHashMap<String, Object>();
+			item.put("key", entries.get(i).getKey());
+			item.put("count", entries.get(i).getValue().count);
+			item.put("error", entries.get(i).getValue().error);
+			result.add(item);
+		}
+		return result;
+	}
+
+	public void clear() {
+		for (Stripe stripe : stripes) {
+			stripe.clear();
+		}
+	}
+
+	/**
+	 * 一个分段的Space-Saving计数
+	 */
+	static class Stripe {
+
+		private final int capacity;
+
+		private final Map<String, Counter> counters;
+
+		Stripe(int capacity) {
+			this.capacity = capacity;
+			this.counters = new HashMap<String, Counter>(capacity * 2);
+		}
+
+		synchronized void offer(String key, long weight) {
+			Counter counter = counters.get(key);
+			if (counter != null) {
+				counter.count += weight;
+				return;
+			}
+			if (counters.size() < capacity) {
+				counters.put(key, new Counter(weight, 0));
+				return;
+			}
+			String minKey = null;
+			Counter min = null;
+			for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+				if (min == null || entry.getValue().count < min.count) {
+					minKey = entry.getKey();
+					min = entry.getValue();
+				}
+			}
+			counters.remove(minKey);
+			counters.put(key, new Counter(min.count + weight, min.count));
+		}
+
+		synchronized void copyTo(List<Map.Entry<String, Counter>> entries) {
+			for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+				Counter counter = entry.getValue();
+				entries.add(new AbstractMap.SimpleEntry<String, Counter>(entry.getKey(), new Counter(counter.count,
+						counter.error)));
+			}
+		}
+
+		synchronized void clear() {
+			counters.clear();
+		}
+	}
+
+	static class Counter {
+
+		long count;
+
+		/**
+		 * 替换时继承的计数，即最大高估量
+		 */
+		final long error;
+
+		Counter(long count, long error) {
+			this.count = count;
+			this.error = error;
+		}
+	}
+
+}
@@ -0,0 +1,20 @@
+package com.haozileung.infra.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 批量回调接口
+ */
+public interface IBatchCacheInvoker<T> {
+
+	/**
+	 * 加载多个key的数据
+	 *
+	 * @param keys
+	 *            缓存中未找到的key
+	 * @return 按key返回数据，没有数据的key可以不返回
+	 */
+	Map<String, T> callback(Collection<String> keys);
+
+}
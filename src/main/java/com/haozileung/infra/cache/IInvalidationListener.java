@@ -0,0 +1,18 @@
+package com.haozileung.infra.cache;
+
+import java.util.Collection;
+
+/**
+ * 接收其他节点的缓存失效消息
+ */
+public interface IInvalidationListener {
+
+	/**
+	 * @param region
+	 *            缓存分区
+	 * @param keys
+	 *            失效的key
+	 */
+	void onInvalidate(String region, Collection<String> keys);
+
+}
@@ -0,0 +1,31 @@
+package com.haozileung.infra.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 跨节点的L1缓存失效消息通道
+ */
+public interface InvalidationBus {
+
+	/**
+	 * 开始接收其他节点发布的失效消息
+	 *
+	 * @param listener
+	 */
+	void start(IInvalidationListener listener);
+
+	/**
+	 * 向其他节点发布一批失效的key，本节点不会收到自己发布的消息
+	 *
+	 * @param keys
+	 *            region - key集合
+	 */
+	void publish(Map<String, ? extends Collection<String>> keys);
+
+	/**
+	 * 停止接收并释放资源
+	 */
+	void close();
+
+}
@@ -0,0 +1,39 @@
+package com.haozileung.infra.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.Serializable;
+
+import org.apache.commons.lang3.SerializationException;
+import org.apache.commons.lang3.SerializationUtils;
+
+/**
+ * Java序列化，兼容原有数据
+ */
+public class JavaCacheCodec implements CacheCodec {
+
+	public static final byte ID = 1;
+
+	@Override
+	public byte getId() {
+		return ID;
+	}
+
+	@Override
+	public byte[] encode(Serializable value) throws CacheException {
+		try {
+			return SerializationUtils.serialize(value);
+		} catch (SerializationException e) {
+			throw new CacheException(e);
+		}
+	}
+
+	@Override
+	public Object decode(byte[] data, int offset, int length) throws CacheException {
+		try {
+			return SerializationUtils.deserialize(new ByteArrayInputStream(data, offset, length));
+		} catch (SerializationException e) {
+			throw new CacheException(e);
+		}
+	}
+
+}
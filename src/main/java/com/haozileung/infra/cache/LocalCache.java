@@ -0,0 +1,115 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * 进程内缓存，直接保存对象引用，不做序列化
+ * <p>
+ * 基于guava分段的并发LRU，读操作不加锁
+ * </p>
+ */
+public class LocalCache implements Cache {
+
+	private final com.google.common.cache.Cache<Object, Object> cache;
+
+	private final long timeToLiveSeconds;
+
+	/**
+	 * @param maximumSize
+	 *            最大条数
+	 * @param timeToLiveSeconds
+	 *            写入后的过期时间(秒)，不大于0时不过期
+	 * @param concurrencyLevel
+	 *            分段数
+	 */
+	public LocalCache(long maximumSize, long timeToLiveSeconds, int concurrencyLevel) {
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.concurrencyLevel(concurrencyLevel);
+		if (timeToLiveSeconds > 0) {
+			builder.expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS);
+		}
+		this.cache = builder.build();
+		this.timeToLiveSeconds = Math.max(0, timeToLiveSeconds);
+	}
+
+	/**
+	 * 缓存的过期时间(秒)，永不过期时返回0
+	 *
+	 * @return
+	 */
+	public long getTimeToLiveSeconds() {
+		return timeToLiveSeconds;
+	}
+
+	@Override
+	public Object get(Object key) throws CacheException {
+		return key == null ? null : cache.getIfPresent(key);
+	}
+
+	@Override
+	public void put(Object key, Serializable value) throws CacheException {
+		if (key == null) {
+			return;
+		}
+		if (value == null) {
+			cache.invalidate(key);
+		} else {
+			cache.put(key, value);
+		}
+	}
+
+	@Override
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException {
+		return new HashMap<Object, Object>(cache.getAllPresent(keys));
+	}
+
+	@Override
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException {
+		for (Map.Entry<?, ? extends Serializable> entry : values.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void update(Object key, Serializable value) throws CacheException {
+		put(key, value);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public List keys() throws CacheException {
+		return new ArrayList<Object>(cache.asMap().keySet());
+	}
+
+	@Override
+	public void remove(Object key) throws CacheException {
+		if (key != null) {
+			cache.invalidate(key);
+		}
+	}
+
+	@Override
+	public void removeAll(Collection<?> keys) throws CacheException {
+		cache.invalidateAll(keys);
+	}
+
+	@Override
+	public void clear() throws CacheException {
+		cache.invalidateAll();
+	}
+
+	@Override
+	public void destroy() throws CacheException {
+		cache.invalidateAll();
+		cache.cleanUp();
+	}
+
+}
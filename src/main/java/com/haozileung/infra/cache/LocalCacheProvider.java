@@ -0,0 +1,77 @@
+package com.haozileung.infra.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 进程内缓存实现，可在EhCacheManager中代替EhCacheProvider
+ * <p>
+ * 配置在app.properties中：cache.l1.max_size、cache.l1.ttl为默认的最大条数和过期时间，
+ * cache.l1.&lt;region&gt;.max_size、cache.l1.&lt;region&gt;.ttl单独配置某个region，
+ * 过期时间格式同memcached.properties(10s/5m/1h/1d)
+ * </p>
+ */
+public class LocalCacheProvider implements CacheProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(LocalCacheProvider.class);
+
+	private static final String PREFIX = "cache.l1.";
+
+	private final ConcurrentMap<String, LocalCache> caches = new ConcurrentHashMap<String, LocalCache>();
+
+	private long defaultMaxSize;
+
+	private int defaultSecondToLive;
+
+	private int concurrencyLevel;
+
+	@Override
+	public LocalCache buildCache(String regionName) throws CacheException {
+		LocalCache cache = caches.get(regionName);
+		if (cache != null) {
+			return cache;
+		}
+		long maxSize = NumberUtils.toLong(getProperty(regionName + ".max_size"), defaultMaxSize);
+		int secondToLive = getSeconds(getProperty(regionName + ".ttl"), defaultSecondToLive);
+		log.debug("Building cache named {} using maxSize {} and secondToLive {}", regionName, maxSize,
+				secondToLive);
+		cache = new LocalCache(maxSize, secondToLive, concurrencyLevel);
+		LocalCache existing = caches.putIfAbsent(regionName, cache);
+		return existing != null ? existing : cache;
+	}
+
+	@Override
+	public void start() throws CacheException {
+		defaultMaxSize = NumberUtils.toLong(getProperty("max_size"), 10000);
+		defaultSecondToLive = getSeconds(getProperty("ttl"), 5);
+		concurrencyLevel = NumberUtils.toInt(getProperty("concurrency"), Math.max(4, Runtime.getRuntime()
+				.availableProcessors() * 2));
+	}
+
+	@Override
+	public void stop() {
+		for (LocalCache cache : caches.values()) {
+			cache.destroy();
+		}
+		caches.clear();
+	}
+
+	private static String getProperty(String name) {
+		return PropertiesUtil.getProperties().getProperty(PREFIX + name);
+	}
+
+	private static int getSeconds(String value, int defaultValue) {
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		return MemcachedProvider._GetSeconds(value.toLowerCase().trim());
+	}
+
+}
@@ -0,0 +1,46 @@
+package com.haozileung.infra.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的失效消息通道，不依赖Redis
+ * <p>
+ * 同一个JVM中的每个实例相当于一个节点，发布的消息同步投递给其他实例，用于测试或单机部署
+ * </p>
+ */
+public class LoopbackInvalidationBus implements InvalidationBus {
+
+	private static final List<LoopbackInvalidationBus> NODES = new CopyOnWriteArrayList<LoopbackInvalidationBus>();
+
+	private volatile IInvalidationListener listener;
+
+	@Override
+	public void start(IInvalidationListener listener) {
+		this.listener = listener;
+		NODES.add(this);
+	}
+
+	@Override
+	public void publish(Map<String, ? extends Collection<String>> keys) {
+		for (LoopbackInvalidationBus node : NODES) {
+			IInvalidationListener target = node.listener;
+			if (node == this || target == null) {
+				continue;
+			}
+			for (Map.Entry<String, ? extends Collection<String>> entry : keys.entrySet()) {
+				target.onInvalidate(entry.getKey(), new ArrayList<String>(entry.getValue()));
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		NODES.remove(this);
+		listener = null;
+	}
+
+}
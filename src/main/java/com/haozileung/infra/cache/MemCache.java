@@ -1,8 +1,12 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.whalin.MemCached.MemCachedClient;
 
@@ -14,6 +18,7 @@ public class MemCache implements Cache {
 	private MemCachedClient mc;
 	private int secondToLive;
 	private int hash;
+	private String region;
 
 	/**
 	 * Creates a new Hibernate pluggable cache based on a cache name.
@@ -22,6 +27,7 @@ public class MemCache implements Cache {
 		mc = new MemCachedClient();
 		this.secondToLive = secondToLive;
 		this.hash = name.hashCode();
+		this.region = name;
 	}
 
 	@Override
@@ -41,7 +47,63 @@ public class MemCache implements Cache {
 	 */
 	@Override
 	public Object get(Object key) throws CacheException {
-		return (key != null) ? mc.get(String.valueOf(key), hash) : null;
+		return (key != null) ? decode(mc.get(String.valueOf(key), hash)) : null;
+	}
+
+	/**
+	 * Gets the values of the elements which match the given keys in one
+	 * request per server.
+	 *
+	 * @param keys
+	 *            the keys of the elements to return.
+	 * @return the values by key, keys not found or expired are absent
+	 * @throws CacheException
+	 */
+	@Override
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException {
+		Map<Object, Object> values = new HashMap<Object, Object>();
+		if (keys == null || keys.isEmpty()) {
+			return values;
+		}
+		Object[] keyArray = keys.toArray();
+		String[] names = new String[keyArray.length];
+		for (int i = 0; i < keyArray.length; i++) {
+			names[i] = String.valueOf(keyArray[i]);
+		}
+		Integer[] hashes = new Integer[names.length];
+		Arrays.fill(hashes, hash);
+		Map<String, Object> found = mc.getMulti(names, hashes);
+		if (found != null) {
+			for (int i = 0; i < keyArray.length; i++) {
+				Object value = decode(found.get(names[i]));
+				if (value != null) {
+					values.put(keyArray[i], value);
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Values written before codecs were introduced are stored as objects by
+	 * the client and returned unchanged.
+	 */
+	private static Object decode(Object value) {
+		return (value instanceof byte[]) ? CacheCodecs.decode((byte[]) value) : value;
+	}
+
+	/**
+	 * Puts objects into the cache.
+	 *
+	 * @param values
+	 *            values by key
+	 * @throws CacheException
+	 */
+	@Override
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException {
+		for (Map.Entry<?, ? extends Serializable> entry : values.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
 	}
 
 	/**
@@ -75,11 +137,11 @@ public class MemCache implements Cache {
 			return;
 		}
 		if (secondToLive <= 0) {
-			mc.set(String.valueOf(key), value, hash);
+			mc.set(String.valueOf(key), CacheCodecs.encode(region, value), hash);
 		} else {
 			Calendar cal = Calendar.getInstance();
 			cal.add(Calendar.SECOND, secondToLive);
-			mc.set(String.valueOf(key), value, cal.getTime(), hash);
+			mc.set(String.valueOf(key), CacheCodecs.encode(region, value), cal.getTime(), hash);
 		}
 	}
 
@@ -99,6 +161,20 @@ public class MemCache implements Cache {
 		}
 	}
 
+	/**
+	 * Removes the elements which match the keys.
+	 *
+	 * @param keys
+	 *            the keys of the elements to remove
+	 * @throws CacheException
+	 */
+	@Override
+	public void removeAll(Collection<?> keys) throws CacheException {
+		for (Object key : keys) {
+			remove(key);
+		}
+	}
+
 	/**
 	 * Remove all elements in the cache, but leave the cache in a useable state.
 	 *
@@ -1,12 +1,19 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * 缓存助手
+ * <p>
+ * memcached.properties中client=nio时使用NioMemcachedProvider，默认使用MemcachedProvider
+ * </p>
  */
 public class MemcacheManager {
 
@@ -23,7 +30,10 @@ public class MemcacheManager {
 
 	private final static Cache _GetCache(String cache_name) {
 		if (provider == null) {
-			provider = new MemcachedProvider();
+			if ("nio".equalsIgnoreCase(StringUtils.trim(MemcachedProvider.loadProperties().getProperty("client"))))
+				provider = new NioMemcachedProvider();
+			else
+				provider = new MemcachedProvider();
 			provider.start();
 			logger.info("MemcacheManager started...");
 		}
@@ -71,6 +81,41 @@ public class MemcacheManager {
 			_GetCache(name).put(key, value);
 	}
 
+	/**
+	 * 批量获取缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 * @return 命中的数据，未命中的key不在结果中
+	 */
+	public final static Map<Object, Object> getAll(String name, Collection<?> keys) {
+		if (name != null && keys != null && !keys.isEmpty())
+			return _GetCache(name).getAll(keys);
+		return new HashMap<Object, Object>();
+	}
+
+	/**
+	 * 批量写入缓存
+	 *
+	 * @param name
+	 * @param values
+	 */
+	public final static void setAll(String name, Map<?, ? extends Serializable> values) {
+		if (name != null && values != null && !values.isEmpty())
+			_GetCache(name).putAll(values);
+	}
+
+	/**
+	 * 批量清除缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 */
+	public final static void evictAll(String name, Collection<?> keys) {
+		if (name != null && keys != null && !keys.isEmpty())
+			_GetCache(name).removeAll(keys);
+	}
+
 	/**
 	 * 清除缓冲中的某个数据
 	 *
@@ -30,7 +30,7 @@ public class MemcachedProvider implements CacheProvider {
 	private Hashtable<String, MemCache> cacheManager;
 	private Properties _cache_properties = new Properties();
 
-	private static int _GetSeconds(String str) {
+	static int _GetSeconds(String str) {
 		try {
 			switch (str.charAt(str.length() - 1)) {
 			case 's':
@@ -50,14 +50,12 @@ public class MemcachedProvider implements CacheProvider {
 		return -1;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * 读取memcached.properties
 	 * 
-	 * @see org.hibernate.cache.CacheProvider#start(java.util.Properties)
+	 * @return
 	 */
-	@Override
-	@SuppressWarnings({ "rawtypes" })
-	public void start() throws CacheException {
+	static Properties loadProperties() {
 		String conf = "memcached.properties";
 		final URL url = Resources.getResource(conf);
 		final ByteSource byteSource = Resources.asByteSource(url);
@@ -77,6 +75,18 @@ public class MemcachedProvider implements CacheProvider {
 				}
 			}
 		}
+		return props;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.hibernate.cache.CacheProvider#start(java.util.Properties)
+	 */
+	@Override
+	@SuppressWarnings({ "rawtypes" })
+	public void start() throws CacheException {
+		final Properties props = loadProperties();
 		String servers = props.getProperty(SERVERS_CONF);
 		if (StringUtils.isBlank(servers)) {
 			throw new CacheException(
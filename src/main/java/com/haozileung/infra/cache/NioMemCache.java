@@ -0,0 +1,207 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haozileung.infra.utils.MD5Util;
+
+/**
+ * 使用{@link BinaryMemcachedClient}的MemCached
+ * <p>
+ * key加上region前缀，超过协议长度限制或含有空白字符的key使用MD5。批量写入和删除先全部发出再统一等待结果
+ * </p>
+ */
+public class NioMemCache implements Cache {
+
+	private final static Logger log = LoggerFactory.getLogger(NioMemCache.class);
+
+	/**
+	 * memcached的key长度上限
+	 */
+	private final static int MAX_KEY_LENGTH = 250;
+
+	private final BinaryMemcachedClient client;
+
+	private final String region;
+
+	private final int secondToLive;
+
+	private final long timeoutMillis;
+
+	/**
+	 * @param client
+	 * @param region
+	 * @param secondToLive
+	 *            过期时间(秒)，不大于0时不过期
+	 * @param timeoutMillis
+	 *            等待响应的超时(毫秒)
+	 */
+	public NioMemCache(BinaryMemcachedClient client, String region, int secondToLive, long timeoutMillis) {
+		this.client = client;
+		this.region = region;
+		this.secondToLive = secondToLive;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	private String getKeyName(Object key) {
+		String name = region + ":" + key;
+		if (!isValidKey(name)) {
+			name = region + ":#" + MD5Util.MD5(String.valueOf(key)).or(String.valueOf(key.hashCode()));
+		}
+		return name;
+	}
+
+	/**
+	 * memcached的key不能超过250字节，不能含空白和控制字符
+	 *
+	 * @param name
+	 * @return
+	 */
+	private static boolean isValidKey(String name) {
+		int bytes = 0;
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (c <= ' ' || c == 0x7f) {
+				return false;
+			}
+			// UTF-8编码后的长度，代理对每个char计2字节
+			bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+		}
+		return bytes <= MAX_KEY_LENGTH;
+	}
+
+	private <T> T await(Future<T> future) throws CacheException {
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(false);
+			throw new CacheException("Memcached request timed out after " + timeoutMillis + "ms", e);
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof CacheException ? (CacheException) e.getCause() : new CacheException(
+					e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CacheException(e);
+		}
+	}
+
+	@Override
+	public Object get(Object key) throws CacheException {
+		if (key == null)
+			return null;
+		try {
+			byte[] data = await(client.get(getKeyName(key)));
+			return data == null ? null : CacheCodecs.decode(data);
+		} catch (CacheException e) {
+			log.error("Error occured when get data from memcached", e);
+			return null;
+		}
+	}
+
+	@Override
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException {
+		Map<Object, Object> values = new HashMap<Object, Object>();
+		if (keys == null || keys.isEmpty())
+			return values;
+		Map<String, Object> names = new HashMap<String, Object>();
+		for (Object key : keys) {
+			if (key != null)
+				names.put(getKeyName(key), key);
+		}
+		try {
+			Map<String, byte[]> found = await(client.getMulti(names.keySet()));
+			for (Map.Entry<String, byte[]> entry : found.entrySet()) {
+				Object key = names.get(entry.getKey());
+				if (key != null)
+					values.put(key, CacheCodecs.decode(entry.getValue()));
+			}
+		} catch (CacheException e) {
+			log.error("Error occured when get data from memcached", e);
+		}
+		return values;
+	}
+
+	@Override
+	public void put(Object key, Serializable value) throws CacheException {
+		if (key == null)
+			return;
+		if (value == null) {
+			remove(key);
+			return;
+		}
+		await(client.set(getKeyName(key), CacheCodecs.encode(region, value), secondToLive));
+	}
+
+	@Override
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException {
+		List<CompletableFuture<Boolean>> futures = new ArrayList<CompletableFuture<Boolean>>();
+		for (Map.Entry<?, ? extends Serializable> entry : values.entrySet()) {
+			if (entry.getKey() == null)
+				continue;
+			String name = getKeyName(entry.getKey());
+			if (entry.getValue() == null)
+				futures.add(client.delete(name));
+			else
+				futures.add(client.set(name, CacheCodecs.encode(region, entry.getValue()), secondToLive));
+		}
+		awaitAll(futures);
+	}
+
+	@Override
+	public void update(Object key, Serializable value) throws CacheException {
+		put(key, value);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public List keys() throws CacheException {
+		return null;
+	}
+
+	@Override
+	public void remove(Object key) throws CacheException {
+		if (key != null)
+			await(client.delete(getKeyName(key)));
+	}
+
+	@Override
+	public void removeAll(Collection<?> keys) throws CacheException {
+		List<CompletableFuture<Boolean>> futures = new ArrayList<CompletableFuture<Boolean>>();
+		for (Object key : keys) {
+			if (key != null)
+				futures.add(client.delete(getKeyName(key)));
+		}
+		awaitAll(futures);
+	}
+
+	private void awaitAll(List<CompletableFuture<Boolean>> futures) throws CacheException {
+		if (!futures.isEmpty())
+			await(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])));
+	}
+
+	/**
+	 * 与MemCache相同，清空所有服务器
+	 */
+	@Override
+	public void clear() throws CacheException {
+		await(client.flushAll());
+	}
+
+	@Override
+	public void destroy() throws CacheException {
+		this.clear();
+	}
+
+}
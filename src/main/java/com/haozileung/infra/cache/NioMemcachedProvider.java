@@ -0,0 +1,100 @@
+package com.haozileung.infra.cache;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 基于NIO二进制协议客户端的MemCached实现
+ * <p>
+ * 在memcached.properties中配置client=nio启用，servers同MemcachedProvider，nio.connections为每个服务器的连接数(默认2)，
+ * nio.timeout为等待响应的超时毫秒数(默认1000)，nio.connect_timeout为连接超时毫秒数(默认3000)，
+ * cache.&lt;region&gt;为各region的过期时间
+ * </p>
+ */
+public class NioMemcachedProvider implements CacheProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(NioMemcachedProvider.class);
+
+	private final static String DEFAULT_REGION_NAME = "____DEFAULT_CACHE_REGION";
+	private final static String CACHE_IDENT = "cache.";
+	private final static String SERVERS_CONF = "servers";
+
+	private final ConcurrentMap<String, NioMemCache> caches = new ConcurrentHashMap<String, NioMemCache>();
+
+	private Properties properties;
+
+	private BinaryMemcachedClient client;
+
+	private long timeout;
+
+	@Override
+	public NioMemCache buildCache(String name) throws CacheException {
+		if (client == null) {
+			throw new CacheException("NioMemcachedProvider Not Started...");
+		}
+		if (StringUtils.isEmpty(name)) {
+			name = DEFAULT_REGION_NAME;
+		}
+		NioMemCache cache = caches.get(name);
+		if (cache == null) {
+			String timeToLive = properties.getProperty(CACHE_IDENT + name);
+			int secondToLive = -1;
+			if (StringUtils.isNotBlank(timeToLive)) {
+				secondToLive = MemcachedProvider._GetSeconds(timeToLive.toLowerCase().trim());
+			}
+			log.debug("Building cache named {} using secondToLive is {}", name, secondToLive);
+			cache = new NioMemCache(client, name, secondToLive, timeout);
+			NioMemCache existing = caches.putIfAbsent(name, cache);
+			if (existing != null) {
+				cache = existing;
+			}
+		}
+		return cache;
+	}
+
+	@Override
+	public void start() throws CacheException {
+		properties = MemcachedProvider.loadProperties();
+		String servers = properties.getProperty(SERVERS_CONF);
+		if (StringUtils.isBlank(servers)) {
+			throw new CacheException("configuration 'memcached.servers' get a empty value");
+		}
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (String server : servers.split(",")) {
+			if (StringUtils.isBlank(server)) {
+				continue;
+			}
+			String host = StringUtils.substringBeforeLast(server.trim(), ":");
+			int port = NumberUtils.toInt(StringUtils.substringAfterLast(server.trim(), ":"), 11211);
+			addresses.add(new InetSocketAddress(host, port));
+		}
+		timeout = NumberUtils.toLong(properties.getProperty("nio.timeout"), 1000);
+		try {
+			client = new BinaryMemcachedClient(addresses, NumberUtils.toInt(
+					properties.getProperty("nio.connections"), 2), NumberUtils.toInt(
+					properties.getProperty("nio.connect_timeout"), 3000));
+		} catch (IOException e) {
+			throw new CacheException("Unable to start memcached client", e);
+		}
+	}
+
+	@Override
+	public void stop() {
+		caches.clear();
+		if (client != null) {
+			client.close();
+			client = null;
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+
+/**
+ * 空值标记，缓存数据不存在的结果，避免每次都查询数据库
+ * <p>
+ * 标记自带过期时间，各级缓存不支持单条数据的过期时间时也能按时失效，过期的标记视为未命中
+ * </p>
+ */
+public class NullValue implements Serializable {
+
+	private static final long serialVersionUID = 6287301325480431875L;
+
+	/**
+	 * 过期时间点(毫秒)
+	 */
+	private long expireAt;
+
+	public NullValue() {
+	}
+
+	public NullValue(long expireAt) {
+		this.expireAt = expireAt;
+	}
+
+	public long getExpireAt() {
+		return expireAt;
+	}
+
+	public void setExpireAt(long expireAt) {
+		this.expireAt = expireAt;
+	}
+
+	/**
+	 * 是否已过期
+	 *
+	 * @return
+	 */
+	public boolean expired() {
+		return System.currentTimeMillis() >= expireAt;
+	}
+
+	/**
+	 * 剩余的秒数，至少为1
+	 *
+	 * @return
+	 */
+	public int remainingSeconds() {
+		long remaining = (expireAt - System.currentTimeMillis() + 999) / 1000;
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining));
+	}
+
+}
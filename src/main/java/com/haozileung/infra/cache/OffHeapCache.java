@@ -0,0 +1,336 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 堆外缓存，序列化后的数据保存在直接内存中，不占用堆空间
+ * <p>
+ * 数据按key的hash分到多个段，每段是一块固定大小的直接内存，按blockSize切分为块，一条数据占用若干不必连续的块。
+ * 空间不足时按LRU淘汰，过期的数据在读取时清除。key及块索引等元数据保存在堆上
+ * </p>
+ */
+public class OffHeapCache implements Cache {
+
+	private final String region;
+
+	private final Segment[] segments;
+
+	private final long timeToLiveMillis;
+
+	/**
+	 * @param region
+	 *            缓存分区，用于选择编码器
+	 * @param maxBytes
+	 *            总容量(字节)
+	 * @param blockSize
+	 *            块大小(字节)
+	 * @param segmentCount
+	 *            段数
+	 * @param timeToLiveSeconds
+	 *            写入后的过期时间(秒)，不大于0时不过期
+	 */
+	public OffHeapCache(String region, long maxBytes, int blockSize, int segmentCount, long timeToLiveSeconds) {
+		if (blockSize <= 0 || segmentCount <= 0) {
+			throw new CacheException("Illegal off-heap cache configuration for " + region);
+		}
+		long segmentBlocks = maxBytes / segmentCount / blockSize;
+		if (segmentBlocks <= 0 || segmentBlocks * blockSize > Integer.MAX_VALUE) {
+			throw new CacheException("Illegal off-heap cache size for " + region + ": " + maxBytes);
+		}
+		this.region = region;
+		this.timeToLiveMillis = timeToLiveSeconds > 0 ? timeToLiveSeconds * 1000 : 0;
+		this.segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment((int) segmentBlocks, blockSize);
+		}
+	}
+
+	private Segment segmentFor(Object key) {
+		int h = key.hashCode();
+		h ^= (h >>> 16);
+		return segments[(h & 0x7fffffff) % segments.length];
+	}
+
+	@Override
+	public Object get(Object key) throws CacheException {
+		if (key == null) {
+			return null;
+		}
+		byte[] data = segmentFor(key).get(key, System.currentTimeMillis());
+		return data == null ? null : CacheCodecs.decode(data);
+	}
+
+	@Override
+	public void put(Object key, Serializable value) throws CacheException {
+		if (key == null) {
+			return;
+		}
+		Segment segment = segmentFor(key);
+		if (value == null) {
+			segment.remove(key);
+			return;
+		}
+		byte[] data = CacheCodecs.encode(region, value);
+		long expireAt = timeToLiveMillis > 0 ? System.currentTimeMillis() + timeToLiveMillis : Long.MAX_VALUE;
+		segment.put(key, data, expireAt);
+	}
+
+	@Override
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException {
+		Map<Object, Object> values = new HashMap<Object, Object>();
+		for (Object key : keys) {
+			Object value = get(key);
+			if (value != null) {
+				values.put(key, value);
+			}
+		}
+		return values;
+	}
+
+	@Override
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException {
+		for (Map.Entry<?, ? extends Serializable> entry : values.entrySet()) {
+			put(entry.getKey(), entry.getValue());
+		}
+	}
+
+	@Override
+	public void update(Object key, Serializable value) throws CacheException {
+		put(key, value);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public List keys() throws CacheException {
+		List<Object> keys = new ArrayList<Object>();
+		for (Segment segment : segments) {
+			segment.keys(keys);
+		}
+		return keys;
+	}
+
+	@Override
+	public void remove(Object key) throws CacheException {
+		if (key != null) {
+			segmentFor(key).remove(key);
+		}
+	}
+
+	@Override
+	public void removeAll(Collection<?> keys) throws CacheException {
+		for (Object key : keys) {
+			remove(key);
+		}
+	}
+
+	@Override
+	public void clear() throws CacheException {
+		for (Segment segment : segments) {
+			segment.clear();
+		}
+	}
+
+	@Override
+	public void destroy() throws CacheException {
+		clear();
+	}
+
+	/**
+	 * 已分配的直接内存(字节)
+	 *
+	 * @return
+	 */
+	public long getCapacity() {
+		long capacity = 0;
+		for (Segment segment : segments) {
+			capacity += segment.buffer.capacity();
+		}
+		return capacity;
+	}
+
+	/**
+	 * 数据占用的字节数，不含块内的空余
+	 *
+	 * @return
+	 */
+	public long getUsedBytes() {
+		long used = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				used += segment.usedBytes;
+			}
+		}
+		return used;
+	}
+
+	public long getEntryCount() {
+		long count = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				count += segment.entries.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 因空间不足被淘汰的数据条数
+	 *
+	 * @return
+	 */
+	public long getEvictionCount() {
+		long count = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				count += segment.evictions;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * 一条数据占用的块
+	 */
+	static class Entry {
+
+		final int[] blocks;
+
+		final int length;
+
+		final long expireAt;
+
+		Entry(int[] blocks, int length, long expireAt) {
+			this.blocks = blocks;
+			this.length = length;
+			this.expireAt = expireAt;
+		}
+	}
+
+	/**
+	 * 一块直接内存及其分配、淘汰，所有操作在段上同步
+	 */
+	static class Segment {
+
+		final ByteBuffer buffer;
+
+		final int blockSize;
+
+		/**
+		 * 空闲块栈
+		 */
+		final int[] freeBlocks;
+
+		int freeCount;
+
+		/**
+		 * 按访问顺序排列，第一个为最久未访问
+		 */
+		final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+
+		long usedBytes;
+
+		long evictions;
+
+		Segment(int blocks, int blockSize) {
+			this.buffer = ByteBuffer.allocateDirect(blocks * blockSize);
+			this.blockSize = blockSize;
+			this.freeBlocks = new int[blocks];
+			for (int i = 0; i < blocks; i++) {
+				freeBlocks[i] = blocks - 1 - i;
+			}
+			this.freeCount = blocks;
+		}
+
+		synchronized byte[] get(Object key, long now) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.expireAt <= now) {
+				entries.remove(key);
+				release(entry);
+				return null;
+			}
+			byte[] data = new byte[entry.length];
+			int offset = 0;
+			for (int block : entry.blocks) {
+				int n = Math.min(blockSize, entry.length - offset);
+				seek(block);
+				buffer.get(data, offset, n);
+				offset += n;
+			}
+			return data;
+		}
+
+		synchronized void put(Object key, byte[] data, long expireAt) {
+			Entry old = entries.remove(key);
+			if (old != null) {
+				release(old);
+			}
+			int needed = (data.length + blockSize - 1) / blockSize;
+			if (needed > freeBlocks.length) {
+				// 超过整段容量的数据不缓存
+				return;
+			}
+			Iterator<Entry> eldest = entries.values().iterator();
+			while (freeCount < needed) {
+				release(eldest.next());
+				eldest.remove();
+				evictions++;
+			}
+			int[] blocks = new int[needed];
+			int offset = 0;
+			for (int i = 0; i < needed; i++) {
+				blocks[i] = freeBlocks[--freeCount];
+				int n = Math.min(blockSize, data.length - offset);
+				seek(blocks[i]);
+				buffer.put(data, offset, n);
+				offset += n;
+			}
+			entries.put(key, new Entry(blocks, data.length, expireAt));
+			usedBytes += data.length;
+		}
+
+		synchronized void remove(Object key) {
+			Entry entry = entries.remove(key);
+			if (entry != null) {
+				release(entry);
+			}
+		}
+
+		synchronized void keys(List<Object> keys) {
+			keys.addAll(entries.keySet());
+		}
+
+		synchronized void clear() {
+			for (Entry entry : entries.values()) {
+				release(entry);
+			}
+			entries.clear();
+		}
+
+		/**
+		 * 定位到块的起始位置，转为Buffer调用以兼容Java 8
+		 */
+		private void seek(int block) {
+			((Buffer) buffer).position(block * blockSize);
+		}
+
+		private void release(Entry entry) {
+			for (int block : entry.blocks) {
+				freeBlocks[freeCount++] = block;
+			}
+			usedBytes -= entry.length;
+		}
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.haozileung.infra.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 堆外缓存助手，只对cache.offheap.regions中列出的region(逗号分隔)生效，其他region的操作直接忽略
+ */
+public class OffHeapCacheManager {
+
+	private final static Logger logger = LoggerFactory.getLogger(OffHeapCacheManager.class);
+
+	private final static Set<String> REGIONS;
+
+	private static CacheProvider provider;
+
+	static {
+		Set<String> regions = new HashSet<String>();
+		for (String region : StringUtils.split(
+				PropertiesUtil.getProperties().getProperty("cache.offheap.regions", ""), ',')) {
+			if (StringUtils.isNotBlank(region)) {
+				regions.add(region.trim());
+			}
+		}
+		REGIONS = Collections.unmodifiableSet(regions);
+	}
+
+	public static synchronized void destroy() {
+		if (provider != null) {
+			provider.stop();
+			provider = null;
+		}
+		logger.info("OffHeapCacheManager stopped...");
+	}
+
+	private final static synchronized Cache _GetCache(String cache_name) {
+		if (provider == null) {
+			provider = new OffHeapCacheProvider();
+			provider.start();
+			logger.info("OffHeapCacheManager started...");
+		}
+		return provider.buildCache(cache_name);
+	}
+
+	/**
+	 * region是否使用堆外缓存
+	 *
+	 * @param name
+	 * @return
+	 */
+	public final static boolean isEnabled(String name) {
+		return name != null && REGIONS.contains(name);
+	}
+
+	/**
+	 * 获取region的堆外缓存，用于查看容量和淘汰数
+	 *
+	 * @param name
+	 * @return 未启用或尚未创建时返回null
+	 */
+	public final static synchronized OffHeapCache getCache(String name) {
+		if (!isEnabled(name) || provider == null)
+			return null;
+		return (OffHeapCache) provider.buildCache(name);
+	}
+
+	/**
+	 * 获取缓存中的数据
+	 *
+	 * @param name
+	 * @param key
+	 * @return
+	 */
+	public final static Object get(String name, String key) {
+		if (isEnabled(name) && key != null)
+			return _GetCache(name).get(key);
+		return null;
+	}
+
+	/**
+	 * 写入缓存
+	 *
+	 * @param name
+	 * @param key
+	 * @param value
+	 */
+	public final static void set(String name, String key, Serializable value) {
+		if (isEnabled(name) && key != null && value != null)
+			_GetCache(name).put(key, value);
+	}
+
+	/**
+	 * 批量获取缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 * @return 命中的数据，未命中的key不在结果中
+	 */
+	public final static Map<Object, Object> getAll(String name, Collection<?> keys) {
+		if (isEnabled(name) && keys != null && !keys.isEmpty())
+			return _GetCache(name).getAll(keys);
+		return new HashMap<Object, Object>();
+	}
+
+	/**
+	 * 批量写入缓存
+	 *
+	 * @param name
+	 * @param values
+	 */
+	public final static void setAll(String name, Map<?, ? extends Serializable> values) {
+		if (isEnabled(name) && values != null && !values.isEmpty())
+			_GetCache(name).putAll(values);
+	}
+
+	/**
+	 * 清除缓冲中的某个数据
+	 *
+	 * @param name
+	 * @param key
+	 */
+	public final static void evict(String name, String key) {
+		if (isEnabled(name) && key != null)
+			_GetCache(name).remove(key);
+	}
+
+}
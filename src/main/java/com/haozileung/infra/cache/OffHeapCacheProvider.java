@@ -0,0 +1,85 @@
+package com.haozileung.infra.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 堆外缓存实现
+ * <p>
+ * 配置在app.properties中：cache.offheap.max_mb(每个region的容量，默认64)、cache.offheap.ttl(默认10m)、
+ * cache.offheap.block_size(默认512)、cache.offheap.segments(默认16)，
+ * 容量和过期时间可用cache.offheap.&lt;region&gt;.max_mb、cache.offheap.&lt;region&gt;.ttl单独配置
+ * </p>
+ */
+public class OffHeapCacheProvider implements CacheProvider {
+
+	private static final Logger log = LoggerFactory.getLogger(OffHeapCacheProvider.class);
+
+	private static final String PREFIX = "cache.offheap.";
+
+	private final ConcurrentMap<String, OffHeapCache> caches = new ConcurrentHashMap<String, OffHeapCache>();
+
+	private long defaultMaxMb;
+
+	private int defaultSecondToLive;
+
+	private int blockSize;
+
+	private int segments;
+
+	@Override
+	public OffHeapCache buildCache(String regionName) throws CacheException {
+		OffHeapCache cache = caches.get(regionName);
+		if (cache != null) {
+			return cache;
+		}
+		synchronized (caches) {
+			// 直接内存较大，同一个region只分配一次
+			cache = caches.get(regionName);
+			if (cache == null) {
+				long maxMb = NumberUtils.toLong(getProperty(regionName + ".max_mb"), defaultMaxMb);
+				int secondToLive = getSeconds(getProperty(regionName + ".ttl"), defaultSecondToLive);
+				log.debug("Building off-heap cache named {} using {}MB and secondToLive {}", regionName, maxMb,
+						secondToLive);
+				cache = new OffHeapCache(regionName, maxMb * 1024 * 1024, blockSize, segments, secondToLive);
+				caches.put(regionName, cache);
+			}
+			return cache;
+		}
+	}
+
+	@Override
+	public void start() throws CacheException {
+		defaultMaxMb = NumberUtils.toLong(getProperty("max_mb"), 64);
+		defaultSecondToLive = getSeconds(getProperty("ttl"), 600);
+		blockSize = NumberUtils.toInt(getProperty("block_size"), 512);
+		segments = NumberUtils.toInt(getProperty("segments"), 16);
+	}
+
+	@Override
+	public void stop() {
+		for (OffHeapCache cache : caches.values()) {
+			cache.destroy();
+		}
+		caches.clear();
+	}
+
+	private static String getProperty(String name) {
+		return PropertiesUtil.getProperties().getProperty(PREFIX + name);
+	}
+
+	private static int getSeconds(String value, int defaultValue) {
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		return MemcachedProvider._GetSeconds(value.toLowerCase().trim());
+	}
+
+}
@@ -1,23 +1,90 @@
 package com.haozileung.infra.cache;
 
-import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
-import org.apache.commons.lang3.SerializationUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * Redis缓存
+ * <p>
+ * key按一致性哈希分布到各节点，批量操作按节点分组，每个节点一次往返；keys和clear遍历所有节点
+ * </p>
+ */
 public class RedisCache implements Cache {
 
 	private final static Logger log = LoggerFactory.getLogger(RedisCache.class);
+
+	/**
+	 * 每次SCAN返回的key数量提示，同时也是clear时每批删除的上限
+	 */
+	private final static int SCAN_COUNT = NumberUtils.toInt(
+			PropertiesUtil.getProperties().getProperty("cache.redis.scan_count"), 1000);
 	private String region;
 
+	/**
+	 * 过期时间(秒)，不大于0时不过期
+	 */
+	private int secondToLive;
+
+	/**
+	 * 过期时间随机延长的比例
+	 */
+	private double jitter;
+
 	public RedisCache(String region) {
+		this(region, -1, 0);
+	}
+
+	/**
+	 * @param region
+	 * @param secondToLive
+	 *            过期时间(秒)，不大于0时不过期
+	 * @param jitter
+	 *            过期时间随机延长的比例，如0.1表示延长0-10%
+	 */
+	public RedisCache(String region, int secondToLive, double jitter) {
 		this.region = region;
+		this.secondToLive = secondToLive;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * 过期时间(秒)，不含随机延长，不过期时返回0
+	 * 
+	 * @return
+	 */
+	public int getTimeToLiveSeconds() {
+		return Math.max(secondToLive, 0);
+	}
+
+	/**
+	 * 本次写入使用的过期时间，加上随机延长避免同一批写入的key同时过期
+	 * 
+	 * @return
+	 */
+	private int getExpireSeconds() {
+		int extra = (int) (secondToLive * jitter);
+		return extra > 0 ? secondToLive + ThreadLocalRandom.current().nextInt(extra + 1) : secondToLive;
 	}
 
 	/**
@@ -40,26 +107,179 @@ public class RedisCache implements Cache {
 		return region + ":O:" + key;
 	}
 
+	/**
+	 * 匹配本region所有key的SCAN参数，region中的通配符需转义
+	 * 
+	 * @return
+	 */
+	private ScanParams getScanParams() {
+		StringBuilder pattern = new StringBuilder(region.length() + 2);
+		for (char c : region.toCharArray()) {
+			if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\')
+				pattern.append('\\');
+			pattern.append(c);
+		}
+		pattern.append(":*");
+		return new ScanParams().match(pattern.toString()).count(SCAN_COUNT);
+	}
+
+	/**
+	 * 按所在节点分组
+	 * 
+	 * @param names
+	 *            完整的key
+	 * @return 节点的连接池到names下标的映射
+	 */
+	private static Map<JedisPool, List<Integer>> groupByShard(String[] names) {
+		Map<JedisPool, List<Integer>> groups = new LinkedHashMap<JedisPool, List<Integer>>();
+		for (int i = 0; i < names.length; i++) {
+			JedisPool shard = RedisCacheProvider.getShard(names[i]);
+			List<Integer> group = groups.get(shard);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(shard, group);
+			}
+			group.add(i);
+		}
+		return groups;
+	}
+
+	private static byte[][] getBytes(String[] names, List<Integer> indexes) {
+		byte[][] bytes = new byte[indexes.size()][];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = names[indexes.get(i)].getBytes();
+		}
+		return bytes;
+	}
+
 	@Override
 	public Object get(Object key) throws CacheException {
-		Object obj = null;
+		if (null == key)
+			return null;
+		byte[] b = null;
 		boolean broken = false;
-		Jedis cache = RedisCacheProvider.getResource();
+		String name = getKeyName(key);
+		Jedis cache = RedisCacheProvider.getResource(name);
 		try {
-			if (null == key)
-				return null;
-			byte[] b = cache.get(getKeyName(key).getBytes());
-			if (b != null)
-				obj = SerializationUtils.deserialize(b);
+			b = cache.get(name.getBytes());
 		} catch (Exception e) {
 			log.error("Error occured when get data from L2 cache", e);
 			broken = true;
-			if (e instanceof IOException || e instanceof NullPointerException)
-				remove(key);
 		} finally {
 			RedisCacheProvider.returnResource(cache, broken);
 		}
-		return obj;
+		if (b == null)
+			return null;
+		try {
+			return CacheCodecs.decode(b);
+		} catch (CacheException e) {
+			undecodable(Collections.singletonList(key), e);
+			return null;
+		}
+	}
+
+	/**
+	 * 无法解码的数据(未知的编码器、不允许的类型等)按未命中处理并删除，连接仍可用
+	 *
+	 * @param keys
+	 * @param e
+	 */
+	private void undecodable(Collection<?> keys, CacheException e) {
+		log.warn("Unable to decode L2 cache data, removed {}:{}", region, keys, e);
+		try {
+			removeAll(keys);
+		} catch (CacheException ex) {
+			log.error("Error occured when remove data from L2 cache", ex);
+		}
+	}
+
+	@Override
+	public Map<Object, Object> getAll(Collection<?> keys) throws CacheException {
+		Map<Object, Object> values = new HashMap<Object, Object>();
+		if (keys == null || keys.isEmpty())
+			return values;
+		Object[] keyArray = keys.toArray();
+		String[] names = new String[keyArray.length];
+		for (int i = 0; i < keyArray.length; i++) {
+			names[i] = getKeyName(keyArray[i]);
+		}
+		// 每个节点一次MGET，失败的节点按未命中处理
+		List<Object> undecodable = new ArrayList<Object>();
+		CacheException failure = null;
+		for (Map.Entry<JedisPool, List<Integer>> group : groupByShard(names).entrySet()) {
+			List<Integer> indexes = group.getValue();
+			boolean broken = false;
+			Jedis cache = null;
+			try {
+				cache = group.getKey().getResource();
+				List<byte[]> result = cache.mget(getBytes(names, indexes));
+				for (int i = 0; i < indexes.size() && i < result.size(); i++) {
+					byte[] b = result.get(i);
+					if (b == null)
+						continue;
+					Object key = keyArray[indexes.get(i)];
+					try {
+						values.put(key, CacheCodecs.decode(b));
+					} catch (CacheException e) {
+						if (failure == null)
+							failure = e;
+						undecodable.add(key);
+					}
+				}
+			} catch (Exception e) {
+				log.error("Error occured when get data from L2 cache", e);
+				broken = true;
+			} finally {
+				RedisCacheProvider.returnResource(cache, broken);
+			}
+		}
+		if (!undecodable.isEmpty())
+			undecodable(undecodable, failure);
+		return values;
+	}
+
+	@Override
+	public void putAll(Map<?, ? extends Serializable> values) throws CacheException {
+		if (values == null || values.isEmpty())
+			return;
+		List<Serializable> valueList = new ArrayList<Serializable>(values.size());
+		String[] names = new String[values.size()];
+		int n = 0;
+		for (Map.Entry<?, ? extends Serializable> entry : values.entrySet()) {
+			valueList.add(entry.getValue());
+			names[n++] = getKeyName(entry.getKey());
+		}
+		// 每个节点一个pipeline，某个节点失败时其他节点照常写入
+		CacheException failure = null;
+		for (Map.Entry<JedisPool, List<Integer>> group : groupByShard(names).entrySet()) {
+			boolean broken = false;
+			Jedis cache = null;
+			try {
+				cache = group.getKey().getResource();
+				Pipeline pipeline = cache.pipelined();
+				for (int i : group.getValue()) {
+					byte[] name = names[i].getBytes();
+					Serializable value = valueList.get(i);
+					if (value == null)
+						pipeline.del(name);
+					else if (value instanceof NullValue)
+						pipeline.setex(name, ((NullValue) value).remainingSeconds(), CacheCodecs.encode(region, value));
+					else if (secondToLive > 0)
+						pipeline.setex(name, getExpireSeconds(), CacheCodecs.encode(region, value));
+					else
+						pipeline.set(name, CacheCodecs.encode(region, value));
+				}
+				pipeline.sync();
+			} catch (Exception e) {
+				broken = true;
+				if (failure == null)
+					failure = new CacheException(e);
+			} finally {
+				RedisCacheProvider.returnResource(cache, broken);
+			}
+		}
+		if (failure != null)
+			throw failure;
 	}
 
 	@Override
@@ -68,9 +288,16 @@ public class RedisCache implements Cache {
 			remove(key);
 		else {
 			boolean broken = false;
-			Jedis cache = RedisCacheProvider.getResource();
+			String keyName = getKeyName(key);
+			Jedis cache = RedisCacheProvider.getResource(keyName);
 			try {
-				cache.set(getKeyName(key).getBytes(), SerializationUtils.serialize(value));
+				byte[] name = keyName.getBytes();
+				if (value instanceof NullValue)
+					cache.setex(name, ((NullValue) value).remainingSeconds(), CacheCodecs.encode(region, value));
+				else if (secondToLive > 0)
+					cache.setex(name, getExpireSeconds(), CacheCodecs.encode(region, value));
+				else
+					cache.set(name, CacheCodecs.encode(region, value));
 			} catch (Exception e) {
 				broken = true;
 				throw new CacheException(e);
@@ -88,9 +315,10 @@ public class RedisCache implements Cache {
 	@Override
 	public void remove(Object key) throws CacheException {
 		boolean broken = false;
-		Jedis cache = RedisCacheProvider.getResource();
+		String name = getKeyName(key);
+		Jedis cache = RedisCacheProvider.getResource(name);
 		try {
-			cache.del(getKeyName(key));
+			cache.del(name);
 		} catch (Exception e) {
 			broken = true;
 			throw new CacheException(e);
@@ -99,38 +327,93 @@ public class RedisCache implements Cache {
 		}
 	}
 
+	@Override
+	public void removeAll(Collection<?> keys) throws CacheException {
+		if (keys == null || keys.isEmpty())
+			return;
+		String[] names = new String[keys.size()];
+		int i = 0;
+		for (Object key : keys) {
+			names[i++] = getKeyName(key);
+		}
+		CacheException failure = null;
+		for (Map.Entry<JedisPool, List<Integer>> group : groupByShard(names).entrySet()) {
+			boolean broken = false;
+			Jedis cache = null;
+			try {
+				cache = group.getKey().getResource();
+				cache.del(getBytes(names, group.getValue()));
+			} catch (Exception e) {
+				broken = true;
+				if (failure == null)
+					failure = new CacheException(e);
+			} finally {
+				RedisCacheProvider.returnResource(cache, broken);
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
 	@Override
 	@SuppressWarnings("rawtypes")
 	public List keys() throws CacheException {
-		Jedis cache = RedisCacheProvider.getResource();
-		boolean broken = false;
-		try {
-			List<String> keys = new ArrayList<String>();
-			keys.addAll(cache.keys(region + ":*"));
-			for (int i = 0; i < keys.size(); i++) {
-				keys.set(i, keys.get(i).substring(region.length() + 3));
+		// SCAN分批遍历，避免KEYS阻塞服务端；遍历期间一直存在的key保证返回，但可能重复
+		Set<String> names = new LinkedHashSet<String>();
+		ScanParams params = getScanParams();
+		for (JedisPool shard : RedisCacheProvider.getShards()) {
+			boolean broken = false;
+			Jedis cache = null;
+			try {
+				cache = shard.getResource();
+				String cursor = ScanParams.SCAN_POINTER_START;
+				do {
+					ScanResult<String> result = cache.scan(cursor, params);
+					names.addAll(result.getResult());
+					cursor = result.getStringCursor();
+				} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+			} catch (Exception e) {
+				broken = true;
+				throw new CacheException(e);
+			} finally {
+				RedisCacheProvider.returnResource(cache, broken);
 			}
-			return keys;
-		} catch (Exception e) {
-			broken = true;
-			throw new CacheException(e);
-		} finally {
-			RedisCacheProvider.returnResource(cache, broken);
 		}
+		List<String> keys = new ArrayList<String>(names.size());
+		for (String name : names) {
+			keys.add(name.substring(region.length() + 3));
+		}
+		return keys;
 	}
 
 	@Override
 	public void clear() throws CacheException {
-		Jedis cache = RedisCacheProvider.getResource();
-		boolean broken = false;
-		try {
-			cache.del(region + ":*");
-		} catch (Exception e) {
-			broken = true;
-			throw new CacheException(e);
-		} finally {
-			RedisCacheProvider.returnResource(cache, broken);
+		// DEL不支持通配符，SCAN出每一批key后删除；某个节点失败时继续清除其他节点
+		ScanParams params = getScanParams();
+		CacheException failure = null;
+		for (JedisPool shard : RedisCacheProvider.getShards()) {
+			boolean broken = false;
+			Jedis cache = null;
+			try {
+				cache = shard.getResource();
+				String cursor = ScanParams.SCAN_POINTER_START;
+				do {
+					ScanResult<String> result = cache.scan(cursor, params);
+					List<String> names = result.getResult();
+					if (!names.isEmpty())
+						cache.del(names.toArray(new String[names.size()]));
+					cursor = result.getStringCursor();
+				} while (!ScanParams.SCAN_POINTER_START.equals(cursor));
+			} catch (Exception e) {
+				broken = true;
+				if (failure == null)
+					failure = new CacheException(e);
+			} finally {
+				RedisCacheProvider.returnResource(cache, broken);
+			}
 		}
+		if (failure != null)
+			throw failure;
 	}
 
 	@Override
@@ -1,10 +1,15 @@
 package com.haozileung.infra.cache;
 
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import redis.clients.jedis.Jedis;
+
 /**
  * 缓存助手
  */
@@ -21,13 +26,62 @@ public class RedisCacheManager {
 		logger.info("RedisCacheManager stopped...");
 	}
 
-	private final static Cache _GetCache(String cache_name) {
+	private final static synchronized CacheProvider _GetProvider() {
 		if (provider == null) {
 			provider = new RedisCacheProvider();
 			provider.start();
 			logger.info("RedisCacheManager started...");
 		}
-		return provider.buildCache(cache_name);
+		return provider;
+	}
+
+	private final static Cache _GetCache(String cache_name) {
+		return _GetProvider().buildCache(cache_name);
+	}
+
+	/**
+	 * 发布消息
+	 *
+	 * @param channel
+	 * @param message
+	 */
+	public final static void publish(String channel, String message) {
+		_GetProvider();
+		boolean broken = false;
+		Jedis jedis = RedisCacheProvider.getResource();
+		try {
+			jedis.publish(channel, message);
+		} catch (Exception e) {
+			broken = true;
+			throw new CacheException(e);
+		} finally {
+			RedisCacheProvider.returnResource(jedis, broken);
+		}
+	}
+
+	/**
+	 * 打开独立的连接，用于订阅
+	 *
+	 * @return
+	 */
+	final static Jedis openConnection() {
+		_GetProvider();
+		return RedisCacheProvider.openConnection();
+	}
+
+	/**
+	 * 获取L2缓存的过期时间(秒)，未知或永不过期时返回0
+	 *
+	 * @param name
+	 * @return
+	 */
+	public final static long getTimeToLiveSeconds(String name) {
+		if (name != null) {
+			Cache cache = _GetCache(name);
+			if (cache instanceof RedisCache)
+				return ((RedisCache) cache).getTimeToLiveSeconds();
+		}
+		return 0;
 	}
 
 	/**
@@ -71,6 +125,41 @@ public class RedisCacheManager {
 			_GetCache(name).put(key, value);
 	}
 
+	/**
+	 * 批量获取缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 * @return 命中的数据，未命中的key不在结果中
+	 */
+	public final static Map<Object, Object> getAll(String name, Collection<?> keys) {
+		if (name != null && keys != null && !keys.isEmpty())
+			return _GetCache(name).getAll(keys);
+		return new HashMap<Object, Object>();
+	}
+
+	/**
+	 * 批量写入缓存
+	 *
+	 * @param name
+	 * @param values
+	 */
+	public final static void setAll(String name, Map<?, ? extends Serializable> values) {
+		if (name != null && values != null && !values.isEmpty())
+			_GetCache(name).putAll(values);
+	}
+
+	/**
+	 * 批量清除缓存中的数据
+	 *
+	 * @param name
+	 * @param keys
+	 */
+	public final static void evictAll(String name, Collection<?> keys) {
+		if (name != null && keys != null && !keys.isEmpty())
+			_GetCache(name).removeAll(keys);
+	}
+
 	/**
 	 * 清除缓冲中的某个数据
 	 *
@@ -3,7 +3,15 @@ package com.haozileung.infra.cache;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 
 import com.google.common.io.ByteSource;
 import com.google.common.io.Resources;
@@ -14,6 +22,10 @@ import redis.clients.jedis.JedisPoolConfig;
 
 /**
  * Redis 缓存实现
+ * <p>
+ * 配置了nodes时按一致性哈希把key分布到多个Redis节点，未配置时只使用host/port一个节点。
+ * 发布订阅使用第一个节点
+ * </p>
  * 
  * @author Winter Lau
  */
@@ -25,8 +37,35 @@ public class RedisCacheProvider implements CacheProvider {
 	private static String password;
 	private static int database;
 
+	private final static String CACHE_IDENT = "cache.";
+
+	/**
+	 * 各region的过期时间配置
+	 */
+	private static Properties ttlProperties = new Properties();
+
+	/**
+	 * 未配置过期时间的region使用的过期时间(秒)，不大于0时不过期
+	 */
+	private static int defaultSecondToLive;
+
+	/**
+	 * 过期时间随机延长的比例
+	 */
+	private static double ttlJitter;
+
+	/**
+	 * 第一个节点的连接池，用于发布订阅等不按key分布的命令
+	 */
 	private static JedisPool pool;
 
+	/**
+	 * 各节点的连接池组成的哈希环
+	 */
+	private static ConsistentHash<JedisPool> shards;
+
+	private final ConcurrentMap<String, RedisCache> caches = new ConcurrentHashMap<String, RedisCache>();
+
 	/**
 	 * 释放资源
 	 * 
@@ -38,20 +77,75 @@ public class RedisCacheProvider implements CacheProvider {
 	public static void returnResource(Jedis jedis, boolean isBrokenResource) {
 		if (null == jedis)
 			return;
-		if (isBrokenResource) {
-			pool.returnResourceObject(jedis);
-			jedis = null;
-		} else
-			pool.returnResourceObject(jedis);
+		// close会归还到借出连接的那个连接池，连接已损坏时销毁
+		jedis.close();
 	}
 
 	public static Jedis getResource() {
 		return pool.getResource();
 	}
 
+	/**
+	 * key所在节点的连接
+	 * 
+	 * @param key
+	 *            带region前缀的完整key
+	 * @return
+	 */
+	public static Jedis getResource(String key) {
+		return getShard(key).getResource();
+	}
+
+	/**
+	 * key所在节点的连接池
+	 * 
+	 * @param key
+	 *            带region前缀的完整key
+	 * @return
+	 */
+	static JedisPool getShard(String key) {
+		return shards.get(key);
+	}
+
+	/**
+	 * 所有节点的连接池，按配置的顺序
+	 * 
+	 * @return
+	 */
+	static Collection<JedisPool> getShards() {
+		return shards.getNodes();
+	}
+
+	/**
+	 * 打开不经过连接池的独立连接，不设读超时，用于订阅等长时间阻塞的命令
+	 * 
+	 * @return
+	 */
+	static Jedis openConnection() {
+		Jedis jedis = new Jedis(host, port, timeout, 0);
+		if (password != null)
+			jedis.auth(password);
+		if (database != 0)
+			jedis.select(database);
+		return jedis;
+	}
+
 	@Override
 	public Cache buildCache(String regionName) throws CacheException {
-		return new RedisCache(regionName);
+		RedisCache cache = caches.get(regionName);
+		if (cache == null) {
+			int secondToLive = defaultSecondToLive;
+			String timeToLive = ttlProperties.getProperty(regionName);
+			if (StringUtils.isNotBlank(timeToLive)) {
+				secondToLive = MemcachedProvider._GetSeconds(timeToLive.toLowerCase().trim());
+			}
+			cache = new RedisCache(regionName, secondToLive, ttlJitter);
+			RedisCache existing = caches.putIfAbsent(regionName, cache);
+			if (existing != null) {
+				cache = existing;
+			}
+		}
+		return cache;
 	}
 
 	@Override
@@ -81,9 +175,25 @@ public class RedisCacheProvider implements CacheProvider {
 		password = props.getProperty("password", null);
 
 		port = getProperty(props, "port", 6379);
+		String nodes = props.getProperty("nodes");
+		if (StringUtils.isBlank(nodes)) {
+			nodes = host + ":" + port;
+		}
+		String[] addresses = StringUtils.split(nodes, ", ");
 		timeout = getProperty(props, "timeout", 2000);
 		database = getProperty(props, "database", 0);
 
+		ttlProperties = new Properties();
+		for (String key : props.stringPropertyNames()) {
+			if (key.startsWith(CACHE_IDENT)) {
+				ttlProperties.put(key.substring(CACHE_IDENT.length()), props.getProperty(key));
+			}
+		}
+		String defaultTtl = props.getProperty("default_ttl");
+		defaultSecondToLive = StringUtils.isBlank(defaultTtl) ? -1 : MemcachedProvider._GetSeconds(defaultTtl
+				.toLowerCase().trim());
+		ttlJitter = Math.max(0, NumberUtils.toDouble(props.getProperty("ttl_jitter"), 0));
+
 		// 连接耗尽时是否阻塞, false报异常,ture阻塞直到超时, 默认true
 		// config.setBlockWhenExhausted(true);
 		// 设置的逐出策略类名, 默认DefaultEvictionPolicy(当连接超过最大空闲时间,或连接数超过最大空闲连接数)
@@ -122,13 +232,30 @@ public class RedisCacheProvider implements CacheProvider {
 		config.setTimeBetweenEvictionRunsMillis(60000); // 1m
 		// 每次逐出检查时 逐出的最大数目 如果为负数就是 : 1/abs(n), 默认3
 		config.setNumTestsPerEvictionRun(10);
-		pool = new JedisPool(config, host, port, timeout, password, database);
+		// 节点按host:port命名，增减节点时其余节点上的key不受影响
+		Map<String, JedisPool> pools = new LinkedHashMap<String, JedisPool>();
+		for (String address : addresses) {
+			String nodeHost = StringUtils.substringBeforeLast(address, ":");
+			int nodePort = NumberUtils.toInt(StringUtils.substringAfterLast(address, ":"), port);
+			String name = nodeHost + ":" + nodePort;
+			if (!pools.containsKey(name)) {
+				pools.put(name, new JedisPool(config, nodeHost, nodePort, timeout, password, database));
+			}
+		}
+		shards = new ConsistentHash<JedisPool>(pools, getProperty(props, "virtual_nodes", 160));
+		pool = pools.values().iterator().next();
+		String first = pools.keySet().iterator().next();
+		host = StringUtils.substringBeforeLast(first, ":");
+		port = NumberUtils.toInt(StringUtils.substringAfterLast(first, ":"));
 
 	}
 
 	@Override
 	public void stop() {
-		pool.destroy();
+		caches.clear();
+		for (JedisPool shard : shards.getNodes()) {
+			shard.destroy();
+		}
 	}
 
 	private static String getProperty(Properties props, String key, String defaultValue) {
@@ -0,0 +1,148 @@
+package com.haozileung.infra.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+/**
+ * 基于Redis发布/订阅的失效消息通道
+ * <p>
+ * 消息格式为 {"node":"发布节点","keys":{"region":["key",...]}}，收到本节点发布的消息时忽略。
+ * 订阅使用独立的连接和后台线程，连接断开后自动重连，断开期间的消息会丢失，由L1过期时间兜底
+ * </p>
+ */
+public class RedisInvalidationBus implements InvalidationBus {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisInvalidationBus.class);
+
+	/**
+	 * 重连间隔(毫秒)
+	 */
+	private static final long RECONNECT_MILLIS = 1000;
+
+	private final String channel;
+
+	/**
+	 * 本节点标识
+	 */
+	private final String node = UUID.randomUUID().toString();
+
+	private volatile boolean closed;
+
+	private volatile JedisPubSub subscriber;
+
+	private Thread thread;
+
+	public RedisInvalidationBus(String channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public void start(final IInvalidationListener listener) {
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				subscribe(listener);
+			}
+		}, "cache-invalidation-subscriber");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void subscribe(final IInvalidationListener listener) {
+		while (!closed) {
+			Jedis jedis = null;
+			try {
+				jedis = RedisCacheManager.openConnection();
+				subscriber = new JedisPubSub() {
+					@Override
+					public void onMessage(String channel, String message) {
+						receive(listener, message);
+					}
+				};
+				if (closed) {
+					return;
+				}
+				jedis.subscribe(subscriber, channel);
+			} catch (Exception e) {
+				if (closed) {
+					return;
+				}
+				logger.warn("订阅缓存失效消息失败，{}毫秒后重连", RECONNECT_MILLIS, e);
+				try {
+					Thread.sleep(RECONNECT_MILLIS);
+				} catch (InterruptedException ie) {
+					return;
+				}
+			} finally {
+				if (jedis != null) {
+					try {
+						jedis.close();
+					} catch (Exception e) {
+						logger.debug("关闭订阅连接失败", e);
+					}
+				}
+			}
+		}
+	}
+
+	private void receive(IInvalidationListener listener, String message) {
+		try {
+			JSONObject json = JSON.parseObject(message);
+			if (node.equals(json.getString("node"))) {
+				return;
+			}
+			JSONObject keys = json.getJSONObject("keys");
+			if (keys == null) {
+				return;
+			}
+			for (String region : keys.keySet()) {
+				JSONArray array = keys.getJSONArray(region);
+				List<String> list = new ArrayList<String>(array.size());
+				for (int i = 0; i < array.size(); i++) {
+					list.add(array.getString(i));
+				}
+				listener.onInvalidate(region, list);
+			}
+		} catch (RuntimeException e) {
+			logger.error("处理缓存失效消息失败：{}", message, e);
+		}
+	}
+
+	@Override
+	public void publish(Map<String, ? extends Collection<String>> keys) {
+		JSONObject json = new JSONObject();
+		json.put("node", node);
+		json.put("keys", keys);
+		RedisCacheManager.publish(channel, json.toJSONString());
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		JedisPubSub current = subscriber;
+		if (current != null && current.isSubscribed()) {
+			try {
+				current.unsubscribe();
+			} catch (Exception e) {
+				logger.debug("取消订阅失败", e);
+			}
+		}
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,261 @@
+package com.haozileung.infra.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个region的缓存统计，计数使用LongAdder，多线程下开销很小
+ */
+public class RegionStats {
+
+	/**
+	 * 加载耗时分布的上限(毫秒)，最后一档为超过最大值
+	 */
+	private static final long[] LOAD_BUCKETS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+
+	/**
+	 * L2读取耗时分布的上限(微秒)，最后一档为超过最大值
+	 */
+	private static final long[] L2_BUCKETS = { 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000 };
+
+	private final LongAdder l1Hits = new LongAdder();
+
+	private final LongAdder offHeapHits = new LongAdder();
+
+	private final LongAdder l2Hits = new LongAdder();
+
+	private final LongAdder nullHits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder loadFailures = new LongAdder();
+
+	private final Histogram loadHistogram = new Histogram(LOAD_BUCKETS, TimeUnit.MILLISECONDS, "ms");
+
+	private final Histogram l2Histogram = new Histogram(L2_BUCKETS, TimeUnit.MICROSECONDS, "us");
+
+	private final LongAdder explicitEvictions = new LongAdder();
+
+	private final LongAdder encodedValues = new LongAdder();
+
+	private final LongAdder encodedBytes = new LongAdder();
+
+	private final HotKeySketch hotKeys;
+
+	/**
+	 * 每sample次访问记录一次热点key
+	 */
+	private final int sample;
+
+	RegionStats(int hotKeyCapacity, int sample) {
+		this.hotKeys = new HotKeySketch(hotKeyCapacity);
+		this.sample = Math.max(1, sample);
+	}
+
+	/**
+	 * 记录一次key访问，按采样率进入热点统计
+	 *
+	 * @param key
+	 */
+	public void access(String key) {
+		if (key != null && (sample == 1 || ThreadLocalRandom.current().nextInt(sample) == 0)) {
+			hotKeys.offer(key, sample);
+		}
+	}
+
+	public void l1Hit(long n) {
+		l1Hits.add(n);
+	}
+
+	public void offHeapHit(long n) {
+		offHeapHits.add(n);
+	}
+
+	public void l2Hit(long n) {
+		l2Hits.add(n);
+	}
+
+	/**
+	 * 命中空值标记
+	 *
+	 * @param n
+	 */
+	public void nullHit(long n) {
+		nullHits.add(n);
+	}
+
+	public void miss(long n) {
+		misses.add(n);
+	}
+
+	public void loaded(long costNanos) {
+		loadHistogram.record(costNanos);
+	}
+
+	/**
+	 * 记录一次L2读取的耗时，批量读取算一次
+	 *
+	 * @param costNanos
+	 */
+	public void l2Fetched(long costNanos) {
+		l2Histogram.record(costNanos);
+	}
+
+	public void loadFailed() {
+		loadFailures.increment();
+	}
+
+	/**
+	 * 记录一次CacheHelper.evict，不含因容量或过期被淘汰的数据
+	 */
+	public void explicitEvicted() {
+		explicitEvictions.increment();
+	}
+
+	/**
+	 * 记录一次编码后的数据大小
+	 *
+	 * @param bytes
+	 */
+	public void encoded(int bytes) {
+		encodedValues.increment();
+		encodedBytes.add(bytes);
+	}
+
+	/**
+	 * 统计快照
+	 *
+	 * @param topKeys
+	 *            返回的热点key数量，为0时不返回热点key
+	 * @return
+	 */
+	public Map<String, Object> snapshot(int topKeys) {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		long l1 = l1Hits.sum();
+		long offHeap = offHeapHits.sum();
+		long l2 = l2Hits.sum();
+		long nulls = nullHits.sum();
+		long miss = misses.sum();
+		long total = l1 + offHeap + l2 + nulls + miss;
+		map.put("l1Hits", l1);
+		map.put("offHeapHits", offHeap);
+		map.put("l2Hits", l2);
+		map.put("nullHits", nulls);
+		map.put("misses", miss);
+		map.put("hitRatio", total == 0 ? 0 : (double) (total - miss) / total);
+		map.put("loads", loadHistogram.count());
+		map.put("loadFailures", loadFailures.sum());
+		map.put("loadAvgMillis", loadHistogram.avgMillis());
+		map.put("loadHistogram", loadHistogram.snapshot());
+		map.put("l2Fetches", l2Histogram.count());
+		map.put("l2AvgMillis", l2Histogram.avgMillis());
+		map.put("l2Histogram", l2Histogram.snapshot());
+		map.put("explicitEvictions", explicitEvictions.sum());
+		long values = encodedValues.sum();
+		long bytes = encodedBytes.sum();
+		map.put("encodedValues", values);
+		map.put("encodedBytes", bytes);
+		map.put("avgValueBytes", values == 0 ? 0 : bytes / values);
+		if (topKeys > 0) {
+			map.put("hotKeys", hotKeys.top(topKeys));
+		}
+		return map;
+	}
+
+	/**
+	 * 命中总数，含空值标记
+	 *
+	 * @return
+	 */
+	public long getHitCount() {
+		return l1Hits.sum() + offHeapHits.sum() + l2Hits.sum() + nullHits.sum();
+	}
+
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	public void reset() {
+		l1Hits.reset();
+		offHeapHits.reset();
+		l2Hits.reset();
+		nullHits.reset();
+		misses.reset();
+		loadFailures.reset();
+		loadHistogram.reset();
+		l2Histogram.reset();
+		explicitEvictions.reset();
+		encodedValues.reset();
+		encodedBytes.reset();
+		hotKeys.clear();
+	}
+
+	/**
+	 * 耗时分布
+	 */
+	private static class Histogram {
+
+		private final long[] bounds;
+
+		private final TimeUnit unit;
+
+		private final String label;
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder nanos = new LongAdder();
+
+		private final LongAdder[] buckets;
+
+		Histogram(long[] bounds, TimeUnit unit, String label) {
+			this.bounds = bounds;
+			this.unit = unit;
+			this.label = label;
+			this.buckets = new LongAdder[bounds.length + 1];
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		void record(long costNanos) {
+			count.increment();
+			nanos.add(costNanos);
+			long cost = unit.convert(costNanos, TimeUnit.NANOSECONDS);
+			int i = 0;
+			while (i < bounds.length && cost > bounds[i]) {
+				i++;
+			}
+			buckets[i].increment();
+		}
+
+		long count() {
+			return count.sum();
+		}
+
+		double avgMillis() {
+			long n = count.sum();
+			return n == 0 ? 0 : nanos.sum() / 1000000.0 / n;
+		}
+
+		Map<String, Long> snapshot() {
+			Map<String, Long> histogram = new LinkedHashMap<String, Long>();
+			for (int i = 0; i < bounds.length; i++) {
+				histogram.put("<=" + bounds[i] + label, buckets[i].sum());
+			}
+			histogram.put(">" + bounds[bounds.length - 1] + label, buckets[bounds.length].sum());
+			return histogram;
+		}
+
+		void reset() {
+			count.reset();
+			nanos.reset();
+			for (LongAdder bucket : buckets) {
+				bucket.reset();
+			}
+		}
+	}
+
+}
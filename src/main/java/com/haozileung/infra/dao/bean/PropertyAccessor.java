@@ -0,0 +1,223 @@
+package com.haozileung.infra.dao.bean;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.haozileung.infra.dao.exceptions.DaoException;
+import com.haozileung.infra.utils.ClassUtil;
+
+/**
+ * 类属性读取表，每个类只构建一次
+ * <p>
+ * 优先使用LambdaMetafactory生成的getter，不支持时退回MethodHandle，最后退回反射
+ * </p>
+ */
+public class PropertyAccessor {
+
+	/**
+	 * 日志对象
+	 */
+	private static final Logger LOG = LoggerFactory
+			.getLogger(PropertyAccessor.class);
+
+	/**
+	 * 按类缓存，ClassValue不会阻止类卸载
+	 */
+	private static final ClassValue<PropertyAccessor> ACCESSORS = new ClassValue<PropertyAccessor>() {
+		@Override
+		protected PropertyAccessor computeValue(Class<?> type) {
+			return new PropertyAccessor(type);
+		}
+	};
+
+	/**
+	 * 属性名，顺序与BeanInfo一致
+	 */
+	private final String[] names;
+
+	/**
+	 * 属性读取器
+	 */
+	private final Function<Object, Object>[] getters;
+
+	@SuppressWarnings("unchecked")
+	private PropertyAccessor(Class<?> clazz) {
+		PropertyDescriptor[] pds = ClassUtil.getSelfBeanInfo(clazz)
+				.getPropertyDescriptors();
+		List<String> nameList = new ArrayList<String>(pds.length);
+		List<Function<Object, Object>> getterList = new ArrayList<Function<Object, Object>>(
+				pds.length);
+		for (PropertyDescriptor pd : pds) {
+			Method readMethod = pd.getReadMethod();
+			if (readMethod == null) {
+				continue;
+			}
+			nameList.add(pd.getName());
+			getterList.add(createGetter(clazz, readMethod));
+		}
+		this.names = nameList.toArray(new String[nameList.size()]);
+		this.getters = (Function<Object, Object>[]) getterList
+				.toArray(new Function<?, ?>[getterList.size()]);
+	}
+
+	/**
+	 * 获取类的属性读取表，只包含类本身有getter的属性
+	 *
+	 * @param clazz
+	 * @return
+	 */
+	public static PropertyAccessor forClass(Class<?> clazz) {
+		return ACCESSORS.get(clazz);
+	}
+
+	/**
+	 * 属性个数
+	 *
+	 * @return
+	 */
+	public int size() {
+		return names.length;
+	}
+
+	/**
+	 * 属性名
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getName(int index) {
+		return names[index];
+	}
+
+	/**
+	 * 所有属性名，调用方不应修改返回的数组
+	 *
+	 * @return
+	 */
+	public String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * 属性下标
+	 *
+	 * @param name
+	 *            属性名
+	 * @return 不存在时返回-1
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 读取属性值
+	 *
+	 * @param index
+	 *            属性下标
+	 * @param bean
+	 *            对象
+	 * @return
+	 */
+	public Object get(int index, Object bean) {
+		return getters[index].apply(bean);
+	}
+
+	/**
+	 * 创建getter
+	 *
+	 * @param clazz
+	 * @param readMethod
+	 * @return
+	 */
+	private static Function<Object, Object> createGetter(Class<?> clazz,
+			final Method readMethod) {
+		if (!Modifier.isPublic(readMethod.getDeclaringClass().getModifiers())) {
+			readMethod.setAccessible(true);
+		}
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			MethodHandle handle = lookup.unreflect(readMethod);
+			try {
+				return lambdaGetter(lookup, clazz, readMethod, handle);
+			} catch (LambdaConversionException | RuntimeException e) {
+				LOG.debug("生成getter失败，使用MethodHandle读取 {}", readMethod, e);
+				final MethodHandle generic = handle.asType(MethodType
+						.methodType(Object.class, Object.class));
+				return new Function<Object, Object>() {
+					@Override
+					public Object apply(Object bean) {
+						try {
+							return generic.invokeExact(bean);
+						} catch (RuntimeException | Error e) {
+							throw e;
+						} catch (Throwable e) {
+							throw new DaoException(e);
+						}
+					}
+				};
+			}
+		} catch (IllegalAccessException e) {
+			LOG.debug("创建MethodHandle失败，使用反射读取 {}", readMethod, e);
+			return new Function<Object, Object>() {
+				@Override
+				public Object apply(Object bean) {
+					try {
+						return readMethod.invoke(bean);
+					} catch (Exception e) {
+						throw new DaoException(e);
+					}
+				}
+			};
+		}
+	}
+
+	/**
+	 * 用LambdaMetafactory生成getter
+	 *
+	 * @param lookup
+	 * @param clazz
+	 * @param readMethod
+	 * @param handle
+	 *            readMethod的MethodHandle
+	 * @return
+	 * @throws LambdaConversionException
+	 */
+	@SuppressWarnings("unchecked")
+	private static Function<Object, Object> lambdaGetter(
+			MethodHandles.Lookup lookup, Class<?> clazz, Method readMethod,
+			MethodHandle handle) throws LambdaConversionException {
+		Class<?> returnType = ClassUtils.primitiveToWrapper(readMethod
+				.getReturnType());
+		CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+				MethodType.methodType(Function.class),
+				MethodType.methodType(Object.class, Object.class), handle,
+				MethodType.methodType(returnType, clazz));
+		try {
+			return (Function<Object, Object>) site.getTarget().invokeExact();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// 不捕获变量的工厂方法不会抛出受检异常
+			throw new IllegalStateException(e);
+		}
+	}
+}
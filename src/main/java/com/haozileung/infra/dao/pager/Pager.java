@@ -110,6 +110,36 @@ public class Pager implements Serializable {
 	 */
 	private List<?> list;
 
+	/**
+	 * 游标分页模式，按上一页最后一行的排序字段值定位，不使用offset
+	 */
+	private boolean seek;
+
+	/**
+	 * 上一页最后一行的排序字段值，查询后自动更新
+	 */
+	private Object[] seekKeys;
+
+	/**
+	 * 是否查询总记录数
+	 */
+	private boolean countEnabled = true;
+
+	/**
+	 * 已知总记录数时不再重复查询
+	 */
+	private boolean countCached;
+
+	/**
+	 * 允许使用估算的总记录数，适用于数据量很大的表
+	 */
+	private boolean countEstimated;
+
+	/**
+	 * 列表和总记录数是否在两个连接上并行查询
+	 */
+	private boolean parallel;
+
 	/**
 	 * 创建一个分页器，默认每页显示<code>50</code>项。
 	 */
@@ -198,6 +228,81 @@ public class Pager implements Serializable {
 		return this.itemsTotal;
 	}
 
+	/**
+	 * 总记录数是否已知
+	 *
+	 * @return
+	 */
+	public boolean isItemsTotalKnown() {
+		return itemsTotal != null && itemsTotal != Long.MAX_VALUE;
+	}
+
+	public boolean isSeek() {
+		return seek;
+	}
+
+	/**
+	 * 设置游标分页模式，第一页seekKeys为空，之后每次查询会把最后一行的排序字段值写回seekKeys，
+	 * 用同一个Pager继续查询即为下一页
+	 *
+	 * @param seek
+	 */
+	public void setSeek(boolean seek) {
+		this.seek = seek;
+	}
+
+	public Object[] getSeekKeys() {
+		return seekKeys;
+	}
+
+	public void setSeekKeys(Object... seekKeys) {
+		this.seekKeys = seekKeys;
+	}
+
+	public boolean isCountEnabled() {
+		return countEnabled;
+	}
+
+	public void setCountEnabled(boolean countEnabled) {
+		this.countEnabled = countEnabled;
+	}
+
+	public boolean isCountCached() {
+		return countCached;
+	}
+
+	public void setCountCached(boolean countCached) {
+		this.countCached = countCached;
+	}
+
+	public boolean isCountEstimated() {
+		return countEstimated;
+	}
+
+	/**
+	 * 设置是否允许估算总记录数，无查询条件时读取information_schema中的表行数，有条件时读取EXPLAIN的估算行数，
+	 * 无法估算时仍执行count
+	 *
+	 * @param countEstimated
+	 */
+	public void setCountEstimated(boolean countEstimated) {
+		this.countEstimated = countEstimated;
+	}
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * 设置列表和总记录数是否并行查询，两条语句各自从连接池获取连接，耗时约为两者中的较大值；
+	 * 当前线程有未结束的事务时仍按顺序在事务连接上查询
+	 *
+	 * @param parallel
+	 */
+	public void setParallel(boolean parallel) {
+		this.parallel = parallel;
+	}
+
 	/**
 	 * 取得每页项数。
 	 *
@@ -0,0 +1,151 @@
+package com.haozileung.infra.dao.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+/**
+ * 分页总记录数缓存
+ * <p>
+ * key由表名、表版本号、count语句及参数组成。通过JdbcDao写表时版本号加一，旧的缓存不再命中，并随过期时间淘汰；
+ * 绕过JdbcDao的写操作只能等待过期。直接传入的count语句无法确定涉及的表，归入同一个版本，任何表的写操作都会使其失效
+ * </p>
+ */
+public class CountCache {
+
+	/**
+	 * 缓存的总记录数
+	 */
+	private final Cache<List<Object>, Long> cache;
+
+	/**
+	 * 直接传入的count语句使用的表名
+	 */
+	private static final String RAW_SQL_TABLE = "*";
+
+	/**
+	 * 表版本号
+	 */
+	private final ConcurrentMap<String, AtomicLong> versions = Maps
+			.newConcurrentMap();
+
+	/**
+	 * 过期时间不大于0时不缓存
+	 */
+	private final boolean enabled;
+
+	/**
+	 * @param expireSeconds
+	 *            过期时间(秒)，不大于0时不缓存
+	 * @param maximumSize
+	 *            最大缓存条数
+	 */
+	public CountCache(int expireSeconds, int maximumSize) {
+		this.enabled = expireSeconds > 0;
+		this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize)
+				.expireAfterWrite(Math.max(expireSeconds, 1), TimeUnit.SECONDS)
+				.build();
+	}
+
+	/**
+	 * 生成缓存key，需在执行count语句之前生成，执行期间发生的写操作会使其失效
+	 *
+	 * @param table
+	 *            表名
+	 * @param countSql
+	 *            count语句
+	 * @return
+	 */
+	public List<Object> key(String table, BoundSql countSql) {
+		return key(table, countSql.getSql(), countSql.getParams());
+	}
+
+	/**
+	 * 生成直接传入的count语句的缓存key，需在执行count语句之前生成
+	 *
+	 * @param countSql
+	 *            count语句
+	 * @param args
+	 *            参数
+	 * @return
+	 */
+	public List<Object> sqlKey(String countSql, Object[] args) {
+		return key(RAW_SQL_TABLE, countSql, args == null ? Collections
+				.emptyList() : Arrays.asList(args));
+	}
+
+	private List<Object> key(String table, String countSql, List<?> params) {
+		AtomicLong version = versions.get(table);
+		if (version == null) {
+			AtomicLong created = new AtomicLong();
+			version = versions.putIfAbsent(table, created);
+			if (version == null) {
+				version = created;
+			}
+		}
+		List<Object> key = new ArrayList<Object>(params.size() + 3);
+		key.add(table);
+		key.add(version.get());
+		key.add(countSql);
+		key.addAll(params);
+		return key;
+	}
+
+	/**
+	 * 获取缓存的总记录数
+	 *
+	 * @param key
+	 * @return 未缓存时返回null
+	 */
+	public Long get(List<Object> key) {
+		return enabled ? cache.getIfPresent(key) : null;
+	}
+
+	/**
+	 * 缓存总记录数
+	 *
+	 * @param key
+	 * @param count
+	 */
+	public void put(List<Object> key, Long count) {
+		if (enabled && count != null) {
+			cache.put(key, count);
+		}
+	}
+
+	/**
+	 * 表数据变更，使该表及直接传入的count语句的缓存失效
+	 *
+	 * @param table
+	 *            表名
+	 */
+	public void invalidate(String table) {
+		increment(table);
+		increment(RAW_SQL_TABLE);
+	}
+
+	private void increment(String table) {
+		AtomicLong version = versions.get(table);
+		if (version != null) {
+			version.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 无法确定变更的表时，使所有缓存失效
+	 */
+	public void invalidateAll() {
+		for (AtomicLong version : versions.values()) {
+			version.incrementAndGet();
+		}
+		cache.invalidateAll();
+	}
+}
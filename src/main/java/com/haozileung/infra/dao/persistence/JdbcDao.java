@@ -1,6 +1,8 @@
 package com.haozileung.infra.dao.persistence;
 
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import com.haozileung.infra.dao.pager.Pager;
 
@@ -278,6 +280,8 @@ public interface JdbcDao {
 			final Object[] args, final Class<T> clazz);
 
 	/**
+	 * 分页查询，pager设置为游标模式时按上一页最后一行的排序字段值定位，
+	 * 可通过pager关闭或复用总记录数查询
 	 * 
 	 * @param pager
 	 * @param entity
@@ -286,6 +290,8 @@ public interface JdbcDao {
 	<T> Pager pageSearch(Pager pager, Object entity);
 
 	/**
+	 * 分页查询，pager设置为游标模式时按上一页最后一行的排序字段值定位，
+	 * 可通过pager关闭或复用总记录数查询
 	 * 
 	 * @param pager
 	 * @param criteria
@@ -293,4 +299,85 @@ public interface JdbcDao {
 	 */
 	<T> Pager pageSearch(Pager pager, Criteria criteria);
 
+	/**
+	 * 流式查询，逐行映射，不在内存中保存整个结果集
+	 * <p>
+	 * 使用独立的连接池连接，返回的Stream必须关闭(try-with-resources)才会释放连接。
+	 * 执行查询和读取数据失败时都抛出DaoException，不返回空的Stream
+	 * </p>
+	 *
+	 * @param sql
+	 * @param args
+	 * @param clazz
+	 * @return
+	 */
+	<T> Stream<T> queryForStream(final String sql, final Object[] args,
+			final Class<T> clazz);
+
+	/**
+	 * 按设置的条件流式查询
+	 *
+	 * @param <T>
+	 *            the type parameter
+	 * @param criteria
+	 *            the criteria
+	 * @return stream
+	 */
+	<T> Stream<T> queryForStream(Criteria criteria);
+
+	/**
+	 * 流式查询，每行回调一次，结束后释放连接
+	 *
+	 * @param sql
+	 * @param args
+	 * @param clazz
+	 * @param callback
+	 */
+	<T> void queryForEach(final String sql, final Object[] args,
+			final Class<T> clazz, Consumer<? super T> callback);
+
+	/**
+	 * 批量插入，相同结构的语句合并为一个批次，按批次大小分块执行
+	 *
+	 * @param entities
+	 * @return 自动生成的主键，顺序与entities一致，没有生成主键的位置为null
+	 */
+	List<Long> batchInsert(List<?> entities);
+
+	/**
+	 * 批量根据实体更新
+	 *
+	 * @param entities
+	 * @return 每个实体影响的行数，顺序与entities一致
+	 */
+	int[] batchUpdate(List<?> entities);
+
+	/**
+	 * 批量删除，以实体中不为空的字段为条件
+	 *
+	 * @param entities
+	 * @return 每个实体影响的行数，顺序与entities一致
+	 */
+	int[] batchDelete(List<?> entities);
+
+	/**
+	 * 根据主键批量删除
+	 *
+	 * @param clazz
+	 * @param ids
+	 * @return 每个主键影响的行数，顺序与ids一致
+	 */
+	int[] batchDelete(Class<?> clazz, List<Long> ids);
+
+	/**
+	 * 多行insert批量插入，每条语句包含多行VALUES
+	 * <p>
+	 * 非空字段一致的实体合并到同一语句，每条语句受占位符上限和最大包大小限制
+	 * </p>
+	 *
+	 * @param entities
+	 * @return 自动生成的主键，顺序与entities一致，没有生成主键的位置为null
+	 */
+	List<Long> bulkInsert(List<?> entities);
+
 }
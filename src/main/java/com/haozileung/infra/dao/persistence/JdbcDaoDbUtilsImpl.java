@@ -1,20 +1,45 @@
 package com.haozileung.infra.dao.persistence;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.commons.dbutils.DbUtils;
 
 import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.ResultSetHandler;
 import org.apache.commons.dbutils.handlers.BeanHandler;
 import org.apache.commons.dbutils.handlers.BeanListHandler;
 import org.apache.commons.dbutils.handlers.ColumnListHandler;
 import org.apache.commons.dbutils.handlers.ScalarHandler;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haozileung.infra.dao.bean.PropertyAccessor;
+import com.haozileung.infra.dao.exceptions.DaoException;
 import com.haozileung.infra.dao.pager.Pager;
 import com.haozileung.infra.utils.DataSourceUtil;
 import com.haozileung.infra.utils.NameUtil;
+import com.haozileung.infra.utils.PropertiesUtil;
 
 public class JdbcDaoDbUtilsImpl implements JdbcDao {
 
@@ -26,6 +51,67 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 	 */
 	private static QueryRunner runner = new QueryRunner();
 
+	/**
+	 * 流式查询的fetch size，默认Integer.MIN_VALUE为MySQL逐行读取模式
+	 */
+	private static final int STREAM_FETCH_SIZE = NumberUtils.toInt(
+			PropertiesUtil.getProperties().getProperty("db.stream_fetch_size"),
+			Integer.MIN_VALUE);
+
+	/**
+	 * 批量操作每批次的最大条数
+	 */
+	private int batchSize = NumberUtils.toInt(PropertiesUtil.getProperties()
+			.getProperty("db.batch_size"), 1000);
+
+	/**
+	 * 多行insert每条语句的最大行数
+	 */
+	private int bulkInsertRows = NumberUtils.toInt(PropertiesUtil
+			.getProperties().getProperty("db.bulk_insert_rows"), 1000);
+
+	/**
+	 * 多行insert每条语句的最大字节数估算值，应小于数据库max_allowed_packet
+	 */
+	private int maxPacketBytes = NumberUtils.toInt(PropertiesUtil
+			.getProperties().getProperty("db.max_packet_bytes"), 4 * 1024 * 1024);
+
+	/**
+	 * 分页总记录数缓存，所有实例共用，写操作时按表失效
+	 */
+	private static final CountCache COUNT_CACHE = new CountCache(
+			NumberUtils.toInt(PropertiesUtil.getProperties().getProperty(
+					"db.count_cache_seconds"), 5), 1000);
+
+	/**
+	 * 查询表的估算行数
+	 */
+	private static final String TABLE_ROWS_SQL = "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+
+	/**
+	 * 读取EXPLAIN结果中的估算行数
+	 */
+	private static final ResultSetHandler<Long> EXPLAIN_ROWS_HANDLER = new ResultSetHandler<Long>() {
+		@Override
+		public Long handle(ResultSet rs) throws SQLException {
+			if (!rs.next()) {
+				return null;
+			}
+			long rows = rs.getLong("rows");
+			return rs.wasNull() ? null : rows;
+		}
+	};
+
+	/**
+	 * 并行分页时执行总记录数查询的线程池，队列满时由调用线程执行
+	 */
+	private static final ExecutorService PAGE_COUNT_EXECUTOR = createPageCountExecutor();
+
+	/**
+	 * 预编译语句的占位符上限
+	 */
+	private static final int MAX_PLACEHOLDERS = 65535;
+
 	/**
 	 * 名称处理器，为空按默认执行
 	 */
@@ -61,6 +147,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
 			return null;
+		} finally {
+			this.invalidateCount(entityClass);
 		}
 	}
 
@@ -83,6 +171,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(entity.getClass());
 		}
 	}
 
@@ -95,6 +185,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(criteria.getEntityClass());
 		}
 	}
 
@@ -107,6 +199,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(criteria.getEntityClass());
 		}
 	}
 
@@ -119,6 +213,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(entity.getClass());
 		}
 	}
 
@@ -131,6 +227,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(criteria.getEntityClass());
 		}
 	}
 
@@ -143,6 +241,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(entity.getClass());
 		}
 	}
 
@@ -155,6 +255,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(clazz);
 		}
 	}
 
@@ -166,6 +268,8 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 			runner.update(DataSourceUtil.getConnection(), sql);
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			this.invalidateCount(clazz);
 		}
 	}
 
@@ -348,6 +452,9 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
 			return 0;
+		} finally {
+			DataSourceUtil.markWritten();
+			COUNT_CACHE.invalidateAll();
 		}
 	}
 
@@ -369,6 +476,9 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
 			return null;
+		} finally {
+			DataSourceUtil.markWritten();
+			COUNT_CACHE.invalidateAll();
 		}
 	}
 
@@ -392,11 +502,35 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 		}
 		List<T> data = queryForObjectList(sql, args, clazz);
 		pager.setList(data);
-		Long count = this.queryForSimpleObject(countSql, args, Long.class);
-		pager.setItemsTotal(count);
+		if (needCount(pager)) {
+			List<Object> key = COUNT_CACHE.sqlKey(countSql, args);
+			Long count = COUNT_CACHE.get(key);
+			if (count == null) {
+				count = this.queryForSimpleObject(countSql, args, Long.class);
+				COUNT_CACHE.put(key, count);
+			}
+			pager.setItemsTotal(count);
+		}
 		return pager;
 	}
 
+	/**
+	 * 创建并行分页的线程池，线程数由db.page_count_threads配置
+	 *
+	 * @return
+	 */
+	private static ExecutorService createPageCountExecutor() {
+		int threads = Math.max(1, NumberUtils.toInt(PropertiesUtil
+				.getProperties().getProperty("db.page_count_threads"), 4));
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+						threads * 16), new ThreadFactoryBuilder()
+						.setDaemon(true).setNameFormat("page-count-%d")
+						.build(), new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
 	/**
 	 * 获取名称处理器
 	 *
@@ -414,6 +548,30 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 		this.nameHandler = nameHandler;
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public int getBulkInsertRows() {
+		return bulkInsertRows;
+	}
+
+	public void setBulkInsertRows(int bulkInsertRows) {
+		this.bulkInsertRows = bulkInsertRows;
+	}
+
+	public int getMaxPacketBytes() {
+		return maxPacketBytes;
+	}
+
+	public void setMaxPacketBytes(int maxPacketBytes) {
+		this.maxPacketBytes = maxPacketBytes;
+	}
+
 	@Override
 	public <T> T queryForSimpleObject(String sql, Object[] args,
 			Class<T> mappedClass) {
@@ -444,49 +602,554 @@ public class JdbcDaoDbUtilsImpl implements JdbcDao {
 			logger.error("Pager Cann't be NULL! ");
 			return null;
 		}
-		BoundSql boundSql = SqlAssembleUtils.buildListSql(entity, null,
-				this.getNameHandler());
-		String sql = boundSql.getSql();
-		sql += " LIMIT " + pager.getOffset() + "," + pager.getItemsPerPage();
+		return pageSearch(pager, entity, null, (Class<T>) entity.getClass());
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> Pager pageSearch(Pager pager, Criteria criteria) {
+		if (pager == null) {
+			logger.error("Pager Cann't be NULL! ");
+			return null;
+		}
+		return pageSearch(pager, null, criteria,
+				(Class<T>) criteria.getEntityClass());
+	}
+
+	/**
+	 * 分页查询，游标模式下按上一页最后一行定位，不使用offset
+	 *
+	 * @param pager
+	 * @param entity
+	 * @param criteria
+	 * @param clazz
+	 * @return
+	 */
+	private <T> Pager pageSearch(Pager pager, final Object entity,
+			final Criteria criteria, final Class<T> clazz) {
+		BoundSql boundSql;
+		String sql;
+		if (pager.isSeek()) {
+			boundSql = SqlAssembleUtils.buildSeekListSql(entity, criteria,
+					pager.getSeekKeys(), this.getNameHandler());
+			sql = boundSql.getSql() + " LIMIT " + pager.getItemsPerPage();
+		} else {
+			boundSql = SqlAssembleUtils.buildListSql(entity, criteria,
+					this.getNameHandler());
+			sql = boundSql.getSql() + " LIMIT " + pager.getOffset() + ","
+					+ pager.getItemsPerPage();
+		}
+		final boolean estimated = pager.isCountEstimated();
+		boolean count = needCount(pager);
+		// 有未结束的事务时其他连接看不到未提交的修改，只能顺序执行
+		boolean parallel = count && pager.isParallel()
+				&& !DataSourceUtil.inTransaction();
+		Future<Long> countFuture = null;
+		if (parallel) {
+			countFuture = PAGE_COUNT_EXECUTOR.submit(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return pageCount(entity, criteria, clazz, estimated, true);
+				}
+			});
+		}
 		List<T> data = null;
+		Connection conn = null;
 		try {
-			data = runner.query(DataSourceUtil.getConnection(), sql,
-					new BeanListHandler<T>((Class<T>) entity.getClass()),
+			conn = parallel ? DataSourceUtil.openConnection() : DataSourceUtil
+					.getConnection();
+			data = runner.query(conn, sql, new BeanListHandler<T>(clazz),
 					boundSql.getParams().toArray());
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+		} finally {
+			if (parallel) {
+				DbUtils.closeQuietly(conn);
+			}
 		}
 		pager.setList(data);
-		Long count = this.queryCount(entity);
-		pager.setItemsTotal(count);
+		if (pager.isSeek() && data != null && !data.isEmpty()) {
+			pager.setSeekKeys(readSeekKeys(data.get(data.size() - 1), clazz,
+					criteria));
+		}
+		if (parallel) {
+			pager.setItemsTotal(joinCount(countFuture));
+		} else if (count) {
+			pager.setItemsTotal(this.pageCount(entity, criteria, clazz,
+					estimated, false));
+		}
 		return pager;
 	}
 
-	@SuppressWarnings("unchecked")
-	@Override
-	public <T> Pager pageSearch(Pager pager, Criteria criteria) {
-		if (pager == null) {
-			logger.error("Pager Cann't be NULL! ");
+	/**
+	 * 等待并行的总记录数查询
+	 *
+	 * @param countFuture
+	 * @return 查询失败时返回0
+	 */
+	private Long joinCount(Future<Long> countFuture) {
+		try {
+			return countFuture.get();
+		} catch (InterruptedException e) {
+			countFuture.cancel(true);
+			Thread.currentThread().interrupt();
+			logger.error(e.getMessage(), e);
+		} catch (ExecutionException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return 0L;
+	}
+
+	/**
+	 * 分页总记录数，先取缓存，允许估算时优先使用估算值
+	 *
+	 * @param entity
+	 * @param criteria
+	 * @param clazz
+	 * @param estimated
+	 *            是否允许估算
+	 * @param pooled
+	 *            是否使用连接池中的独立连接，否则使用当前线程的连接
+	 * @return
+	 */
+	private Long pageCount(Object entity, Criteria criteria, Class<?> clazz,
+			boolean estimated, boolean pooled) {
+		BoundSql boundSql = SqlAssembleUtils.buildCountSql(entity, criteria,
+				this.getNameHandler());
+		String tableName = this.getNameHandler().getTableName(clazz);
+		List<Object> key = COUNT_CACHE.key(tableName, boundSql);
+		Long count = COUNT_CACHE.get(key);
+		if (count != null) {
+			return count;
+		}
+		Connection conn = null;
+		try {
+			conn = pooled ? DataSourceUtil.openConnection() : DataSourceUtil
+					.getConnection();
+			if (estimated) {
+				Long estimatedCount = this.estimateCount(conn, tableName,
+						boundSql);
+				if (estimatedCount != null) {
+					return estimatedCount;
+				}
+			}
+			count = runner.query(conn, boundSql.getSql(),
+					new ScalarHandler<Long>(), boundSql.getParams().toArray());
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+			return 0L;
+		} finally {
+			if (pooled) {
+				DbUtils.closeQuietly(conn);
+			}
+		}
+		COUNT_CACHE.put(key, count);
+		return count;
+	}
+
+	/**
+	 * 估算总记录数，无条件时读取information_schema中的表行数，有条件时读取EXPLAIN的估算行数
+	 *
+	 * @param conn
+	 * @param tableName
+	 * @param countSql
+	 * @return 无法估算时返回null
+	 */
+	private Long estimateCount(Connection conn, String tableName,
+			BoundSql countSql) {
+		try {
+			if (countSql.getParams().isEmpty()
+					&& !StringUtils.containsIgnoreCase(countSql.getSql(),
+							" WHERE ")) {
+				Number rows = runner.query(conn, TABLE_ROWS_SQL,
+						new ScalarHandler<Number>(), tableName);
+				return rows == null ? null : rows.longValue();
+			}
+			return runner.query(conn, "EXPLAIN " + countSql.getSql(),
+					EXPLAIN_ROWS_HANDLER, countSql.getParams().toArray());
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
 			return null;
 		}
+	}
+
+	/**
+	 * 写操作之后调用，记录当前线程有未提交的修改，并使实体对应表的总记录数缓存失效
+	 *
+	 * @param clazz
+	 */
+	private void invalidateCount(Class<?> clazz) {
+		DataSourceUtil.markWritten();
+		if (clazz != null) {
+			COUNT_CACHE.invalidate(this.getNameHandler().getTableName(clazz));
+		}
+	}
+
+	/**
+	 * 批量写操作之后调用，记录当前线程有未提交的修改，并使涉及的表的总记录数缓存失效
+	 *
+	 * @param entities
+	 */
+	private void invalidateCount(List<?> entities) {
+		DataSourceUtil.markWritten();
+		Class<?> last = null;
+		for (Object entity : entities) {
+			if (entity != null && entity.getClass() != last) {
+				last = entity.getClass();
+				this.invalidateCount(last);
+			}
+		}
+	}
+
+
+	/**
+	 * 读取最后一行的排序字段值，作为下一页的游标
+	 *
+	 * @param last
+	 * @param clazz
+	 * @param criteria
+	 * @return
+	 */
+	private Object[] readSeekKeys(Object last, Class<?> clazz,
+			Criteria criteria) {
+		String[] properties = SqlAssembleUtils.getSortProperties(clazz,
+				criteria, this.getNameHandler());
+		PropertyAccessor accessor = PropertyAccessor.forClass(last.getClass());
+		Object[] keys = new Object[properties.length];
+		for (int i = 0; i < properties.length; i++) {
+			int index = accessor.indexOf(properties[i]);
+			if (index < 0) {
+				throw new DaoException("排序字段" + properties[i]
+						+ "不可读取，无法生成游标");
+			}
+			keys[i] = accessor.get(index, last);
+		}
+		return keys;
+	}
+
+	/**
+	 * 是否需要查询总记录数
+	 *
+	 * @param pager
+	 * @return
+	 */
+	private boolean needCount(Pager pager) {
+		if (!pager.isCountEnabled()) {
+			return false;
+		}
+		return !(pager.isCountCached() && pager.isItemsTotalKnown());
+	}
+
+	@Override
+	public <T> Stream<T> queryForStream(final String sql, final Object[] args,
+			final Class<T> clazz) {
+		Connection conn = null;
+		PreparedStatement stmt = null;
+		ResultSet rs = null;
+		try {
+			conn = DataSourceUtil.openConnection();
+			stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(STREAM_FETCH_SIZE);
+			runner.fillStatement(stmt, args);
+			rs = stmt.executeQuery();
+		} catch (SQLException e) {
+			DbUtils.closeQuietly(conn, stmt, rs);
+			throw new DaoException(e);
+		}
+		final Connection streamConn = conn;
+		final PreparedStatement streamStmt = stmt;
+		final ResultSet streamRs = rs;
+		return StreamSupport.stream(
+				new ResultSetSpliterator<T>(streamRs, clazz), false).onClose(
+				new Runnable() {
+					@Override
+					public void run() {
+						DbUtils.closeQuietly(streamConn, streamStmt, streamRs);
+					}
+				});
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> Stream<T> queryForStream(Criteria criteria) {
 		BoundSql boundSql = SqlAssembleUtils.buildListSql(null, criteria,
 				this.getNameHandler());
-		String sql = boundSql.getSql();
-		sql += " LIMIT " + pager.getOffset() + "," + pager.getItemsPerPage();
-		List<T> data = null;
+		return this.queryForStream(boundSql.getSql(), boundSql.getParams()
+				.toArray(), (Class<T>) criteria.getEntityClass());
+	}
+
+	@Override
+	public <T> void queryForEach(final String sql, final Object[] args,
+			final Class<T> clazz, Consumer<? super T> callback) {
+		try (Stream<T> stream = this.queryForStream(sql, args, clazz)) {
+			stream.forEach(callback);
+		}
+	}
+
+	@Override
+	public List<Long> batchInsert(List<?> entities) {
+		List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+		for (Object entity : entities) {
+			boundSqls.add(SqlAssembleUtils.buildInsertSql(entity, null,
+					this.getNameHandler()));
+		}
+		Long[] keys = new Long[entities.size()];
 		try {
-			data = runner
-					.query(DataSourceUtil.getConnection(),
-							sql,
-							new BeanListHandler<T>((Class<T>) criteria
-									.getEntityClass()), boundSql.getParams()
-									.toArray());
+			Connection conn = DataSourceUtil.getConnection();
+			for (Map.Entry<String, List<Integer>> group : groupBySql(boundSqls)
+					.entrySet()) {
+				for (List<Integer> chunk : chunk(group.getValue())) {
+					List<Object> generated = runner.insertBatch(conn,
+							group.getKey(), new ColumnListHandler<Object>(),
+							batchParams(boundSqls, chunk));
+					for (int i = 0; i < generated.size() && i < chunk.size(); i++) {
+						Object key = generated.get(i);
+						if (key instanceof Number) {
+							keys[chunk.get(i)] = ((Number) key).longValue();
+						}
+					}
+				}
+			}
 		} catch (SQLException e) {
 			logger.error(e.getMessage(), e);
+			return null;
+		} finally {
+			this.invalidateCount(entities);
 		}
-		pager.setList(data);
-		Long count = this.queryCount(criteria);
-		pager.setItemsTotal(count);
-		return pager;
+		return Arrays.asList(keys);
+	}
+
+	@Override
+	public int[] batchUpdate(List<?> entities) {
+		List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+		for (Object entity : entities) {
+			boundSqls.add(SqlAssembleUtils.buildUpdateSql(entity, null,
+					this.getNameHandler()));
+		}
+		try {
+			return this.executeBatch(boundSqls);
+		} finally {
+			this.invalidateCount(entities);
+		}
+	}
+
+	@Override
+	public int[] batchDelete(List<?> entities) {
+		List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+		for (Object entity : entities) {
+			boundSqls.add(SqlAssembleUtils.buildDeleteSql(entity, null,
+					this.getNameHandler()));
+		}
+		try {
+			return this.executeBatch(boundSqls);
+		} finally {
+			this.invalidateCount(entities);
+		}
+	}
+
+	@Override
+	public int[] batchDelete(Class<?> clazz, List<Long> ids) {
+		List<BoundSql> boundSqls = new ArrayList<BoundSql>(ids.size());
+		for (Long id : ids) {
+			boundSqls.add(SqlAssembleUtils.buildDeleteSql(clazz, id,
+					this.getNameHandler()));
+		}
+		try {
+			return this.executeBatch(boundSqls);
+		} finally {
+			this.invalidateCount(clazz);
+		}
+	}
+
+	@Override
+	public List<Long> bulkInsert(List<?> entities) {
+		List<BoundSql> boundSqls = new ArrayList<BoundSql>(entities.size());
+		for (Object entity : entities) {
+			boundSqls.add(SqlAssembleUtils.buildInsertSql(entity, null,
+					this.getNameHandler()));
+		}
+		Long[] keys = new Long[entities.size()];
+		try {
+			Connection conn = DataSourceUtil.getConnection();
+			for (List<Integer> indexes : groupBySql(boundSqls).values()) {
+				for (List<Integer> chunk : bulkChunk(boundSqls, indexes)) {
+					List<BoundSql> rows = new ArrayList<BoundSql>(chunk.size());
+					for (Integer index : chunk) {
+						rows.add(boundSqls.get(index));
+					}
+					BoundSql boundSql = SqlAssembleUtils
+							.buildBulkInsertSql(rows);
+					List<Object> generated = runner.insert(conn, boundSql
+							.getSql(), new ColumnListHandler<Object>(),
+							boundSql.getParams().toArray());
+					mapGeneratedKeys(generated, chunk, keys);
+				}
+			}
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		} finally {
+			this.invalidateCount(entities);
+		}
+		return Arrays.asList(keys);
+	}
+
+	/**
+	 * 回填多行insert生成的主键。驱动返回的主键少于行数时无法对应到行(自增步长不为1、
+	 * innodb_autoinc_lock_mode=2时可能不连续)，这些位置保持为null
+	 *
+	 * @param generated
+	 * @param chunk
+	 * @param keys
+	 */
+	private static void mapGeneratedKeys(List<Object> generated,
+			List<Integer> chunk, Long[] keys) {
+		if (generated.size() < chunk.size()) {
+			logger.warn("多行insert返回{}个主键，少于{}行，不回填主键", generated.size(),
+					chunk.size());
+			return;
+		}
+		for (int i = 0; i < chunk.size(); i++) {
+			Object key = generated.get(i);
+			if (key instanceof Number) {
+				keys[chunk.get(i)] = ((Number) key).longValue();
+			}
+		}
+	}
+
+	/**
+	 * 多行insert分块，受最大行数、占位符上限和最大包大小限制
+	 *
+	 * @param boundSqls
+	 * @param indexes
+	 * @return
+	 */
+	private List<List<Integer>> bulkChunk(List<BoundSql> boundSqls,
+			List<Integer> indexes) {
+		BoundSql first = boundSqls.get(indexes.get(0));
+		int paramsPerRow = Math.max(1, first.getParams().size());
+		int maxRows = Math.min(bulkInsertRows > 0 ? bulkInsertRows
+				: indexes.size(), MAX_PLACEHOLDERS / paramsPerRow);
+		int rowSqlBytes = first.getSql().length()
+				- first.getSql().lastIndexOf(" VALUES ");
+
+		List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+		int from = 0;
+		long bytes = first.getSql().length();
+		for (int i = 0; i < indexes.size(); i++) {
+			long rowBytes = rowSqlBytes
+					+ estimateBytes(boundSqls.get(indexes.get(i)).getParams());
+			if (i > from
+					&& (i - from >= maxRows || bytes + rowBytes > maxPacketBytes)) {
+				chunks.add(indexes.subList(from, i));
+				from = i;
+				bytes = first.getSql().length();
+			}
+			bytes += rowBytes;
+		}
+		chunks.add(indexes.subList(from, indexes.size()));
+		return chunks;
+	}
+
+	/**
+	 * 估算参数在语句中占用的字节数
+	 *
+	 * @param params
+	 * @return
+	 */
+	private static long estimateBytes(List<Object> params) {
+		long bytes = 0;
+		for (Object param : params) {
+			if (param instanceof CharSequence) {
+				// utf8最多3字节，另加引号和转义余量
+				bytes += ((CharSequence) param).length() * 3 + 4;
+			} else if (param instanceof byte[]) {
+				bytes += ((byte[]) param).length * 2 + 4;
+			} else {
+				bytes += 24;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * 按语句分组执行批量更新
+	 *
+	 * @param boundSqls
+	 * @return 每条语句影响的行数，顺序与boundSqls一致
+	 */
+	private int[] executeBatch(List<BoundSql> boundSqls) {
+		int[] rows = new int[boundSqls.size()];
+		try {
+			Connection conn = DataSourceUtil.getConnection();
+			for (Map.Entry<String, List<Integer>> group : groupBySql(boundSqls)
+					.entrySet()) {
+				for (List<Integer> chunk : chunk(group.getValue())) {
+					int[] result = runner.batch(conn, group.getKey(),
+							batchParams(boundSqls, chunk));
+					for (int i = 0; i < result.length && i < chunk.size(); i++) {
+						rows[chunk.get(i)] = result[i];
+					}
+				}
+			}
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+			return null;
+		}
+		return rows;
+	}
+
+	/**
+	 * 按sql分组，value为语句在列表中的下标
+	 *
+	 * @param boundSqls
+	 * @return
+	 */
+	private static Map<String, List<Integer>> groupBySql(
+			List<BoundSql> boundSqls) {
+		Map<String, List<Integer>> groups = new LinkedHashMap<String, List<Integer>>();
+		for (int i = 0; i < boundSqls.size(); i++) {
+			String sql = boundSqls.get(i).getSql();
+			List<Integer> indexes = groups.get(sql);
+			if (indexes == null) {
+				indexes = new ArrayList<Integer>();
+				groups.put(sql, indexes);
+			}
+			indexes.add(i);
+		}
+		return groups;
+	}
+
+	/**
+	 * 按批次大小分块
+	 *
+	 * @param indexes
+	 * @return
+	 */
+	private List<List<Integer>> chunk(List<Integer> indexes) {
+		int size = batchSize > 0 ? batchSize : indexes.size();
+		List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+		for (int from = 0; from < indexes.size(); from += size) {
+			chunks.add(indexes.subList(from,
+					Math.min(from + size, indexes.size())));
+		}
+		return chunks;
+	}
+
+	/**
+	 * 取出一个批次的参数
+	 *
+	 * @param boundSqls
+	 * @param chunk
+	 * @return
+	 */
+	private static Object[][] batchParams(List<BoundSql> boundSqls,
+			List<Integer> chunk) {
+		Object[][] params = new Object[chunk.size()][];
+		for (int i = 0; i < chunk.size(); i++) {
+			params[i] = boundSqls.get(chunk.get(i)).getParams().toArray();
+		}
+		return params;
 	}
 }
@@ -0,0 +1,53 @@
+package com.haozileung.infra.dao.persistence;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import com.haozileung.infra.dao.exceptions.DaoException;
+import com.haozileung.infra.memory.BeanProcessor;
+import com.haozileung.infra.memory.RowMapper;
+
+/**
+ * 逐行读取结果集的Spliterator，每次只映射一行
+ */
+public class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+	/**
+	 * 行映射器编译器
+	 */
+	private static final BeanProcessor PROCESSOR = new BeanProcessor();
+
+	private final ResultSet rs;
+
+	private final Class<T> clazz;
+
+	/**
+	 * 首行读取时编译
+	 */
+	private RowMapper<T> mapper;
+
+	public ResultSetSpliterator(ResultSet rs, Class<T> clazz) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+		this.rs = rs;
+		this.clazz = clazz;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		try {
+			if (!rs.next()) {
+				return false;
+			}
+			if (mapper == null) {
+				mapper = PROCESSOR.compile(rs, clazz, null);
+			}
+			action.accept(mapper.mapRow(rs));
+			return true;
+		} catch (SQLException e) {
+			throw new DaoException(e);
+		}
+	}
+}
@@ -2,10 +2,8 @@ package com.haozileung.infra.dao.persistence;
 
 import java.beans.BeanInfo;
 import java.beans.PropertyDescriptor;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -15,8 +13,12 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.haozileung.infra.dao.bean.PropertyAccessor;
 import com.haozileung.infra.dao.exceptions.DaoException;
 import com.haozileung.infra.utils.ClassUtil;
+import com.haozileung.infra.utils.NameUtil;
 
 /**
  * SQL组装工具类
@@ -39,6 +41,12 @@ public class SqlAssembleUtils {
 	 */
 	private static final String NOT_IN = "NOT IN";
 
+	/**
+	 * 已编译的sql模板，key为实体类、操作类型及Criteria结构
+	 */
+	private static final Cache<SqlTemplateKey, SqlTemplate> TEMPLATE_CACHE = CacheBuilder
+			.newBuilder().maximumSize(2048).build();
+
 	/**
 	 * 获取实体类对象
 	 *
@@ -50,6 +58,27 @@ public class SqlAssembleUtils {
 		return entity == null ? criteria.getEntityClass() : entity.getClass();
 	}
 
+	/**
+	 * 获取合并后的操作字段，criteria中的字段在前，实体非null字段在后
+	 * <p>
+	 * 返回新列表，构建sql的过程不会修改criteria本身
+	 * </p>
+	 *
+	 * @param entity
+	 * @param criteria
+	 * @param operateType
+	 * @return
+	 */
+	private static List<AutoField> mergeAutoFields(Object entity,
+			Criteria criteria, int operateType) {
+		List<AutoField> autoFields = new ArrayList<AutoField>();
+		if (criteria != null) {
+			autoFields.addAll(criteria.getAutoFields());
+		}
+		autoFields.addAll(getEntityAutoField(entity, operateType));
+		return autoFields;
+	}
+
 	/**
 	 * 构建insert语句
 	 *
@@ -65,20 +94,23 @@ public class SqlAssembleUtils {
 			NameHandler nameHandler) {
 
 		Class<?> entityClass = getEntityClass(entity, criteria);
-		List<AutoField> autoFields = (criteria != null ? criteria
-				.getAutoFields() : new ArrayList<AutoField>());
 
-		List<AutoField> entityAutoField = getEntityAutoField(entity,
+		// 添加到后面
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
 				AutoField.UPDATE_FIELD);
 
-		// 添加到后面
-		autoFields.addAll(entityAutoField);
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.INSERT, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return template.bind(autoFields);
+		}
 
 		String tableName = nameHandler.getTableName(entityClass);
 		String pkName = nameHandler.getPKName(entityClass);
 
 		StringBuilder sql = new StringBuilder("INSERT INTO ");
-		List<Object> params = new ArrayList<Object>();
+		SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
 		sql.append(tableName);
 
 		sql.append("(");
@@ -103,7 +135,7 @@ public class SqlAssembleUtils {
 				args.append(value);
 			} else {
 				args.append("?");
-				params.add(value);
+				params.add(autoField, 0);
 			}
 			sql.append(",");
 			args.append(",");
@@ -114,7 +146,59 @@ public class SqlAssembleUtils {
 		sql.append(")");
 		sql.append(" VALUES ");
 		sql.append(args);
-		return new BoundSql(sql.toString(), pkName, params);
+		return cacheTemplate(key, params, sql.toString(), pkName);
+	}
+
+	/**
+	 * 构建多行insert语句，所有实体需为同一类且非空字段一致
+	 *
+	 * @param entities
+	 *            实体列表
+	 * @param nameHandler
+	 *            名称转换处理器
+	 * @return bound sql
+	 */
+	public static BoundSql buildBulkInsertSql(List<?> entities,
+			NameHandler nameHandler) {
+		List<BoundSql> rows = new ArrayList<BoundSql>(entities.size());
+		for (Object entity : entities) {
+			rows.add(buildInsertSql(entity, null, nameHandler));
+		}
+		return buildBulkInsertSql(rows);
+	}
+
+	/**
+	 * 将多条单行insert语句合并为一条多行insert语句
+	 *
+	 * @param rows
+	 *            由buildInsertSql构建的语句，sql需完全一致
+	 * @return bound sql
+	 */
+	public static BoundSql buildBulkInsertSql(List<BoundSql> rows) {
+		if (CollectionUtils.isEmpty(rows)) {
+			throw new DaoException("批量插入的数据不能为空");
+		}
+		String insertSql = rows.get(0).getSql();
+		int index = insertSql.lastIndexOf(" VALUES ");
+		String tuple = insertSql.substring(index + " VALUES ".length());
+
+		StringBuilder sql = new StringBuilder(insertSql.length()
+				+ (tuple.length() + 1) * (rows.size() - 1));
+		sql.append(insertSql);
+		List<Object> params = new ArrayList<Object>(rows.get(0).getParams()
+				.size()
+				* rows.size());
+		params.addAll(rows.get(0).getParams());
+		for (int i = 1; i < rows.size(); i++) {
+			BoundSql row = rows.get(i);
+			if (!insertSql.equals(row.getSql())) {
+				throw new DaoException("批量插入的实体结构不一致");
+			}
+			sql.append(",").append(tuple);
+			params.addAll(row.getParams());
+		}
+		return new BoundSql(sql.toString(), rows.get(0).getPrimaryKey(),
+				params);
 	}
 
 	/**
@@ -132,23 +216,28 @@ public class SqlAssembleUtils {
 			NameHandler nameHandler) {
 
 		Class<?> entityClass = getEntityClass(entity, criteria);
-		List<AutoField> autoFields = (criteria != null ? criteria
-				.getAutoFields() : new ArrayList<AutoField>());
 
-		List<AutoField> entityAutoField = getEntityAutoField(entity,
+		// 添加到后面，防止or等操作被覆盖
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
 				AutoField.UPDATE_FIELD);
 
-		// 添加到后面，防止or等操作被覆盖
-		autoFields.addAll(entityAutoField);
+		String primaryName = nameHandler.getPKName(entityClass);
+		checkPrimaryValue(entityClass, autoFields, primaryName, nameHandler);
+
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.UPDATE, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return template.bind(autoFields);
+		}
 
 		StringBuilder sql = new StringBuilder();
-		List<Object> params = new ArrayList<Object>();
+		SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
 		String tableName = nameHandler.getTableName(entityClass);
-		String primaryName = nameHandler.getPKName(entityClass);
 
 		sql.append("UPDATE ").append(tableName).append(" SET ");
 
-		Object primaryValue = null;
+		AutoField primaryField = null;
 
 		Iterator<AutoField> iterator = autoFields.iterator();
 		while (iterator.hasNext()) {
@@ -164,14 +253,7 @@ public class SqlAssembleUtils {
 
 			// 如果是主键
 			if (StringUtils.equalsIgnoreCase(primaryName, columnName)) {
-
-				Object[] values = autoField.getValues();
-
-				if (ArrayUtils.isEmpty(values)
-						|| StringUtils.isBlank(values[0].toString())) {
-					throw new DaoException("主键值不能设为空");
-				}
-				primaryValue = values[0];
+				primaryField = autoField;
 			}
 
 			// 白名单 黑名单
@@ -194,7 +276,7 @@ public class SqlAssembleUtils {
 				sql.append("NULL");
 			} else {
 				sql.append("?");
-				params.add(autoField.getValues()[0]);
+				params.add(autoField, 0);
 			}
 			sql.append(",");
 
@@ -205,16 +287,57 @@ public class SqlAssembleUtils {
 		sql.deleteCharAt(sql.length() - 1);
 		sql.append(" WHERE ");
 
-		if (primaryValue != null) {
+		if (primaryField != null) {
 			sql.append(primaryName).append(" = ?");
-			params.add(primaryValue);
+			params.add(primaryField, 0);
 		} else {
-			BoundSql boundSql = SqlAssembleUtils.builderWhereSql(entityClass,
-					autoFields, nameHandler);
-			sql.append(boundSql.getSql());
-			params.addAll(boundSql.getParams());
+			String whereSql = SqlAssembleUtils.builderWhereSql(entityClass,
+					autoFields, nameHandler, params);
+			sql.append(whereSql);
 		}
-		return new BoundSql(sql.toString(), primaryName, params);
+		return cacheTemplate(key, params, sql.toString(), primaryName);
+	}
+
+	/**
+	 * 检查更新的主键值，主键值不能设为空
+	 *
+	 * @param entityClass
+	 * @param autoFields
+	 * @param primaryName
+	 * @param nameHandler
+	 */
+	private static void checkPrimaryValue(Class<?> entityClass,
+			List<AutoField> autoFields, String primaryName,
+			NameHandler nameHandler) {
+		for (AutoField autoField : autoFields) {
+			if (AutoField.UPDATE_FIELD != autoField.getType()) {
+				continue;
+			}
+			String columnName = nameHandler.getColumnName(entityClass,
+					autoField.getName());
+			if (StringUtils.equalsIgnoreCase(primaryName, columnName)) {
+				Object[] values = autoField.getValues();
+				if (ArrayUtils.isEmpty(values) || values[0] == null
+						|| StringUtils.isBlank(values[0].toString())) {
+					throw new DaoException("主键值不能设为空");
+				}
+			}
+		}
+	}
+
+	/**
+	 * 缓存sql模板并返回本次的bound sql
+	 *
+	 * @param key
+	 * @param params
+	 * @param sql
+	 * @param primaryKey
+	 * @return
+	 */
+	private static BoundSql cacheTemplate(SqlTemplateKey key,
+			SqlTemplate.Recorder params, String sql, String primaryKey) {
+		TEMPLATE_CACHE.put(key, params.toTemplate(sql, primaryKey));
+		return new BoundSql(sql, primaryKey, params.getParams());
 	}
 
 	/**
@@ -236,17 +359,23 @@ public class SqlAssembleUtils {
 			return autoFieldList;
 		}
 
-		// 获取属性信息
-		BeanInfo beanInfo = ClassUtil.getSelfBeanInfo(entity.getClass());
-		PropertyDescriptor[] pds = beanInfo.getPropertyDescriptors();
+		// 获取属性读取表
+		PropertyAccessor accessor = PropertyAccessor.forClass(entity
+				.getClass());
 
 		AutoField autoField;
-		for (PropertyDescriptor pd : pds) {
+		for (int i = 0; i < accessor.size(); i++) {
 
-			String fieldName = pd.getName();
+			String fieldName = accessor.getName(i);
 
 			// null值，忽略 (单独指定的可以指定为null)
-			Object value = getReadMethodValue(pd.getReadMethod(), entity);
+			Object value;
+			try {
+				value = accessor.get(i, entity);
+			} catch (RuntimeException e) {
+				LOG.error("获取属性值失败", e);
+				throw e instanceof DaoException ? e : new DaoException(e);
+			}
 			if (value == null) {
 				continue;
 			}
@@ -275,13 +404,15 @@ public class SqlAssembleUtils {
 	 *            the auto fields
 	 * @param nameHandler
 	 *            the name handler
-	 * @return bound sql
+	 * @param params
+	 *            参数记录器
+	 * @return where sql
 	 */
-	private static BoundSql builderWhereSql(Class<?> clazz,
-			List<AutoField> autoFields, NameHandler nameHandler) {
+	private static String builderWhereSql(Class<?> clazz,
+			List<AutoField> autoFields, NameHandler nameHandler,
+			SqlTemplate.Recorder params) {
 
 		StringBuilder sql = new StringBuilder();
-		List<Object> params = new ArrayList<Object>();
 		Iterator<AutoField> iterator = autoFields.iterator();
 		while (iterator.hasNext()) {
 			AutoField autoField = iterator.next();
@@ -308,7 +439,7 @@ public class SqlAssembleUtils {
 				sql.append("(");
 				for (int j = 0; j < values.length; j++) {
 					sql.append(" ?");
-					params.add(values[j]);
+					params.add(autoField, j);
 					if (j != values.length - 1) {
 						sql.append(",");
 					}
@@ -322,14 +453,14 @@ public class SqlAssembleUtils {
 				// 一个值 =
 				sql.append("`").append(columnName).append("` ")
 						.append(autoField.getFieldOperator()).append(" ?");
-				params.add(values[0]);
+				params.add(autoField, 0);
 			} else {
 				// 多个值，or的情况
 				sql.append("(");
 				for (int j = 0; j < values.length; j++) {
 					sql.append("`").append(columnName).append("` ")
 							.append(autoField.getFieldOperator()).append(" ?");
-					params.add(values[j]);
+					params.add(autoField, j);
 					if (j != values.length - 1) {
 						sql.append(" OR ");
 					}
@@ -337,7 +468,7 @@ public class SqlAssembleUtils {
 				sql.append(")");
 			}
 		}
-		return new BoundSql(sql.toString(), null, params);
+		return sql.toString();
 	}
 
 	/**
@@ -353,10 +484,21 @@ public class SqlAssembleUtils {
 
 		List<Object> params = new ArrayList<Object>();
 		params.add(id);
+
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, clazz,
+				SqlTemplateKey.DELETE_BY_ID, null, null);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return new BoundSql(template.getSql(), template.getPrimaryKey(),
+					params);
+		}
+
 		String tableName = nameHandler.getTableName(clazz);
 		String primaryName = nameHandler.getPKName(clazz);
 		String sql = "DELETE FROM " + tableName + " WHERE `" + primaryName
 				+ "` = ?";
+		TEMPLATE_CACHE.put(key, new SqlTemplate(sql, primaryName, new int[0],
+				new int[0]));
 		return new BoundSql(sql, primaryName, params);
 	}
 
@@ -375,25 +517,26 @@ public class SqlAssembleUtils {
 			NameHandler nameHandler) {
 
 		Class<?> entityClass = getEntityClass(entity, criteria);
-		List<AutoField> autoFields = (criteria != null ? criteria
-				.getAutoFields() : new ArrayList<AutoField>());
-
-		List<AutoField> entityAutoField = getEntityAutoField(entity,
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
 				AutoField.WHERE_FIELD);
 
-		autoFields.addAll(entityAutoField);
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.DELETE, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return template.bind(autoFields);
+		}
 
 		String tableName = nameHandler.getTableName(entityClass);
 		String primaryName = nameHandler.getPKName(entityClass);
 
+		SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
 		StringBuilder sql = new StringBuilder("DELETE FROM " + tableName
 				+ " WHERE ");
-		BoundSql boundSql = SqlAssembleUtils.builderWhereSql(entityClass,
-				autoFields, nameHandler);
-		boundSql.setSql(sql.append(boundSql.getSql()).toString());
-		boundSql.setPrimaryKey(primaryName);
+		sql.append(SqlAssembleUtils.builderWhereSql(entityClass, autoFields,
+				nameHandler, params));
 
-		return boundSql;
+		return cacheTemplate(key, params, sql.toString(), primaryName);
 	}
 
 	/**
@@ -414,6 +557,17 @@ public class SqlAssembleUtils {
 
 		Class<?> entityClass = (clazz == null ? criteria.getEntityClass()
 				: clazz);
+		List<Object> params = new ArrayList<Object>();
+		params.add(id);
+
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.BY_ID, criteria, null);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return new BoundSql(template.getSql(), template.getPrimaryKey(),
+					params);
+		}
+
 		String tableName = nameHandler.getTableName(entityClass);
 		String primaryName = nameHandler.getPKName(entityClass);
 		String columns = SqlAssembleUtils.buildColumnSql(entityClass,
@@ -422,9 +576,8 @@ public class SqlAssembleUtils {
 				criteria == null ? null : criteria.getExcludeFields());
 		String sql = "SELECT " + columns + " FROM " + tableName + " WHERE "
 				+ primaryName + " = ?";
-		List<Object> params = new ArrayList<Object>();
-		params.add(id);
-
+		TEMPLATE_CACHE.put(key, new SqlTemplate(sql, primaryName, new int[0],
+				new int[0]));
 		return new BoundSql(sql, primaryName, params);
 	}
 
@@ -443,15 +596,38 @@ public class SqlAssembleUtils {
 			NameHandler nameHandler) {
 
 		Class<?> entityClass = getEntityClass(entity, criteria);
-		List<AutoField> autoFields = (criteria != null ? criteria
-				.getAutoFields() : new ArrayList<AutoField>());
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
+				AutoField.WHERE_FIELD);
 
-		String tableName = nameHandler.getTableName(entityClass);
-		String primaryName = nameHandler.getPKName(entityClass);
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.QUERY, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return template.bind(autoFields);
+		}
 
-		List<AutoField> entityAutoField = getEntityAutoField(entity,
-				AutoField.WHERE_FIELD);
-		autoFields.addAll(entityAutoField);
+		SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
+		String sql = assembleQuerySql(entityClass, criteria, autoFields,
+				nameHandler, params);
+		return cacheTemplate(key, params, sql,
+				nameHandler.getPKName(entityClass));
+	}
+
+	/**
+	 * 组装查询sql，不含排序
+	 *
+	 * @param entityClass
+	 * @param criteria
+	 * @param autoFields
+	 * @param nameHandler
+	 * @param params
+	 * @return
+	 */
+	private static String assembleQuerySql(Class<?> entityClass,
+			Criteria criteria, List<AutoField> autoFields,
+			NameHandler nameHandler, SqlTemplate.Recorder params) {
+
+		String tableName = nameHandler.getTableName(entityClass);
 
 		String columns = SqlAssembleUtils.buildColumnSql(entityClass,
 				nameHandler,
@@ -462,17 +638,12 @@ public class SqlAssembleUtils {
 		querySql.append(" FROM ");
 		querySql.append(tableName);
 
-		List<Object> params = Collections.emptyList();
 		if (!CollectionUtils.isEmpty(autoFields)) {
 			querySql.append(" WHERE ");
-
-			BoundSql boundSql = SqlAssembleUtils.builderWhereSql(entityClass,
-					autoFields, nameHandler);
-			params = boundSql.getParams();
-			querySql.append(boundSql.getSql());
+			querySql.append(SqlAssembleUtils.builderWhereSql(entityClass,
+					autoFields, nameHandler, params));
 		}
-
-		return new BoundSql(querySql.toString(), primaryName, params);
+		return querySql.toString();
 	}
 
 	/**
@@ -489,33 +660,244 @@ public class SqlAssembleUtils {
 	public static BoundSql buildListSql(Object entity, Criteria criteria,
 			NameHandler nameHandler) {
 
-		BoundSql boundSql = SqlAssembleUtils.buildQuerySql(entity, criteria,
-				nameHandler);
+		Class<?> entityClass = getEntityClass(entity, criteria);
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
+				AutoField.WHERE_FIELD);
 
-		StringBuilder sb = new StringBuilder(" ORDER BY ");
-		if (criteria != null) {
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.LIST, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return template.bind(autoFields);
+		}
+
+		SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
+		String querySql = assembleQuerySql(entityClass, criteria, autoFields,
+				nameHandler, params);
+		String[][] sortColumns = getSortColumns(entityClass, criteria,
+				nameHandler);
+		return cacheTemplate(key, params, querySql
+				+ buildOrderBySql(sortColumns),
+				nameHandler.getPKName(entityClass));
+	}
 
-			for (AutoField autoField : criteria.getOrderByFields()) {
+	/**
+	 * 构建游标分页(keyset)列表查询sql
+	 * <p>
+	 * 以上一页最后一行的排序字段值为起点，按排序方向生成 (a &gt; ?) OR (a = ? AND b &lt; ?)
+	 * 形式的条件代替offset。排序字段不含主键时在最后追加主键，保证顺序唯一，
+	 * 排序值相同的行不会在分页边界被跳过；未指定排序时按主键倒序。 排序字段的值不能为null，
+	 * null与任何值比较都不成立，游标值为null时抛出异常
+	 * </p>
+	 *
+	 * @param entity
+	 *            the entity
+	 * @param criteria
+	 *            the criteria
+	 * @param seekKeys
+	 *            上一页最后一行的排序字段值，顺序同{@link #getSortProperties}，为空时查询第一页
+	 * @param nameHandler
+	 *            the name handler
+	 * @return bound sql
+	 */
+	public static BoundSql buildSeekListSql(Object entity, Criteria criteria,
+			Object[] seekKeys, NameHandler nameHandler) {
 
-				sb.append(
-						nameHandler.getColumnName(
-								getEntityClass(entity, criteria),
-								autoField.getName())).append(" ")
-						.append(autoField.getFieldOperator()).append(",");
+		Class<?> entityClass = getEntityClass(entity, criteria);
+		String[][] sortColumns = getSeekColumns(entityClass, criteria,
+				nameHandler);
+		boolean first = ArrayUtils.isEmpty(seekKeys);
+		if (!first) {
+			if (seekKeys.length != sortColumns.length) {
+				throw new DaoException("游标值个数与排序字段个数不一致");
 			}
+			for (int i = 0; i < seekKeys.length; i++) {
+				if (seekKeys[i] == null) {
+					throw new DaoException("排序字段" + sortColumns[i][0]
+							+ "的游标值为null，游标分页的排序字段不能为null");
+				}
+			}
+		}
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
+				AutoField.WHERE_FIELD);
 
-			if (sb.length() > 10) {
-				sb.deleteCharAt(sb.length() - 1);
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				first ? SqlTemplateKey.LIST_SEEK_FIRST
+						: SqlTemplateKey.LIST_SEEK, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		BoundSql boundSql;
+		if (template != null) {
+			boundSql = template.bind(autoFields);
+		} else if (first) {
+			SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
+			String querySql = assembleQuerySql(entityClass, criteria,
+					autoFields, nameHandler, params);
+			boundSql = cacheTemplate(key, params, querySql
+					+ buildOrderBySql(sortColumns),
+					nameHandler.getPKName(entityClass));
+		} else {
+			String tableName = nameHandler.getTableName(entityClass);
+			String columns = SqlAssembleUtils.buildColumnSql(entityClass,
+					nameHandler,
+					criteria == null ? null : criteria.getIncludeFields(),
+					criteria == null ? null : criteria.getExcludeFields());
+			SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
+			String whereSql = CollectionUtils.isEmpty(autoFields) ? ""
+					: builderWhereSql(entityClass, autoFields, nameHandler,
+							params);
+
+			StringBuilder sql = new StringBuilder("SELECT ");
+			sql.append(columns).append(" FROM ").append(tableName)
+					.append(" WHERE ");
+			if (StringUtils.isNotBlank(whereSql)) {
+				// 原条件中可能有or，需加括号
+				sql.append("(").append(whereSql).append(") AND ");
+			}
+			sql.append("(");
+			for (int i = 0; i < sortColumns.length; i++) {
+				if (i > 0) {
+					sql.append(" OR ");
+				}
+				sql.append("(");
+				for (int j = 0; j < i; j++) {
+					sql.append("`").append(sortColumns[j][1]).append("` = ? AND ");
+				}
+				sql.append("`").append(sortColumns[i][1]).append("` ")
+						.append(StringUtils.equalsIgnoreCase("DESC",
+								sortColumns[i][2]) ? "<" : ">").append(" ?)");
 			}
+			sql.append(")");
+			sql.append(buildOrderBySql(sortColumns));
+			boundSql = cacheTemplate(key, params, sql.toString(),
+					nameHandler.getPKName(entityClass));
+		}
+		if (first) {
+			return boundSql;
 		}
 
-		if (sb.length() < 11) {
-			sb.append(boundSql.getPrimaryKey()).append(" DESC");
+		// 游标参数在where条件之后，按(a) (a,b) (a,b,c)...的顺序追加
+		List<Object> params = new ArrayList<Object>(boundSql.getParams());
+		for (int i = 0; i < seekKeys.length; i++) {
+			for (int j = 0; j <= i; j++) {
+				params.add(seekKeys[j]);
+			}
 		}
-		boundSql.setSql(boundSql.getSql() + sb.toString());
+		boundSql.setParams(params);
 		return boundSql;
 	}
 
+	/**
+	 * 获取游标分页排序字段的属性名，顺序与ORDER BY一致，含追加的主键，用于从最后一行读取游标值
+	 *
+	 * @param entityClass
+	 *            the entity class
+	 * @param criteria
+	 *            the criteria
+	 * @param nameHandler
+	 *            the name handler
+	 * @return 属性名数组
+	 */
+	public static String[] getSortProperties(Class<?> entityClass,
+			Criteria criteria, NameHandler nameHandler) {
+		String[][] sortColumns = getSeekColumns(entityClass, criteria,
+				nameHandler);
+		String[] properties = new String[sortColumns.length];
+		for (int i = 0; i < sortColumns.length; i++) {
+			properties[i] = sortColumns[i][0];
+		}
+		return properties;
+	}
+
+	/**
+	 * 获取游标分页的排序字段，不含主键时按最后一个排序字段的方向追加主键
+	 *
+	 * @param entityClass
+	 * @param criteria
+	 * @param nameHandler
+	 * @return
+	 */
+	private static String[][] getSeekColumns(Class<?> entityClass,
+			Criteria criteria, NameHandler nameHandler) {
+		String[][] sortColumns = getSortColumns(entityClass, criteria,
+				nameHandler);
+		String primaryName = nameHandler.getPKName(entityClass);
+		for (String[] sortColumn : sortColumns) {
+			if (StringUtils.equalsIgnoreCase(primaryName, sortColumn[1])) {
+				return sortColumns;
+			}
+		}
+		String[][] seekColumns = Arrays.copyOf(sortColumns,
+				sortColumns.length + 1);
+		seekColumns[sortColumns.length] = new String[] {
+				getPKProperty(entityClass, nameHandler), primaryName,
+				sortColumns[sortColumns.length - 1][2] };
+		return seekColumns;
+	}
+
+	/**
+	 * 获取排序字段，每项为{属性名, 列名, 排序方向}，未指定时按主键倒序
+	 *
+	 * @param entityClass
+	 * @param criteria
+	 * @param nameHandler
+	 * @return
+	 */
+	private static String[][] getSortColumns(Class<?> entityClass,
+			Criteria criteria, NameHandler nameHandler) {
+		if (criteria != null && !criteria.getOrderByFields().isEmpty()) {
+			List<AutoField> orderByFields = criteria.getOrderByFields();
+			String[][] sortColumns = new String[orderByFields.size()][];
+			for (int i = 0; i < sortColumns.length; i++) {
+				AutoField autoField = orderByFields.get(i);
+				sortColumns[i] = new String[] {
+						autoField.getName(),
+						nameHandler.getColumnName(entityClass,
+								autoField.getName()),
+						autoField.getFieldOperator() };
+			}
+			return sortColumns;
+		}
+		String primaryName = nameHandler.getPKName(entityClass);
+		return new String[][] { { getPKProperty(entityClass, nameHandler),
+				primaryName, "DESC" } };
+	}
+
+	/**
+	 * 根据主键列名查找对应的属性名
+	 *
+	 * @param entityClass
+	 * @param nameHandler
+	 * @return
+	 */
+	private static String getPKProperty(Class<?> entityClass,
+			NameHandler nameHandler) {
+		String primaryName = nameHandler.getPKName(entityClass);
+		for (String name : PropertyAccessor.forClass(entityClass).getNames()) {
+			if (StringUtils.equalsIgnoreCase(primaryName,
+					nameHandler.getColumnName(entityClass, name))) {
+				return name;
+			}
+		}
+		return NameUtil.getCamelName(primaryName);
+	}
+
+	/**
+	 * 构建ORDER BY子句
+	 *
+	 * @param sortColumns
+	 * @return
+	 */
+	private static String buildOrderBySql(String[][] sortColumns) {
+		StringBuilder sb = new StringBuilder(" ORDER BY ");
+		for (int i = 0; i < sortColumns.length; i++) {
+			if (i > 0) {
+				sb.append(",");
+			}
+			sb.append(sortColumns[i][1]).append(" ").append(sortColumns[i][2]);
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * 构建记录数查询sql
 	 *
@@ -531,28 +913,28 @@ public class SqlAssembleUtils {
 			NameHandler nameHandler) {
 
 		Class<?> entityClass = getEntityClass(entity, criteria);
-		List<AutoField> autoFields = (criteria != null ? criteria
-				.getAutoFields() : new ArrayList<AutoField>());
-
-		List<AutoField> entityAutoField = getEntityAutoField(entity,
+		List<AutoField> autoFields = mergeAutoFields(entity, criteria,
 				AutoField.WHERE_FIELD);
-		autoFields.addAll(entityAutoField);
+
+		SqlTemplateKey key = SqlTemplateKey.create(nameHandler, entityClass,
+				SqlTemplateKey.COUNT, criteria, autoFields);
+		SqlTemplate template = TEMPLATE_CACHE.getIfPresent(key);
+		if (template != null) {
+			return template.bind(autoFields);
+		}
 
 		String tableName = nameHandler.getTableName(entityClass);
 		StringBuilder countSql = new StringBuilder("SELECT COUNT(*) FROM ");
 		countSql.append(tableName);
 
-		List<Object> params = Collections.emptyList();
+		SqlTemplate.Recorder params = new SqlTemplate.Recorder(autoFields);
 		if (!CollectionUtils.isEmpty(autoFields)) {
 			countSql.append(" WHERE ");
-			BoundSql boundSql = builderWhereSql(
-					getEntityClass(entityAutoField, criteria), autoFields,
-					nameHandler);
-			countSql.append(boundSql.getSql());
-			params = boundSql.getParams();
+			countSql.append(builderWhereSql(entityClass, autoFields,
+					nameHandler, params));
 		}
 
-		return new BoundSql(countSql.toString(), null, params);
+		return cacheTemplate(key, params, countSql.toString(), null);
 	}
 
 	/**
@@ -604,27 +986,4 @@ public class SqlAssembleUtils {
 		columns.deleteCharAt(columns.length() - 1);
 		return columns.toString();
 	}
-
-	/**
-	 * 获取属性值
-	 *
-	 * @param readMethod
-	 * @param entity
-	 * @return
-	 */
-	private static Object getReadMethodValue(Method readMethod, Object entity) {
-		if (readMethod == null) {
-			return null;
-		}
-		try {
-			if (!Modifier.isPublic(readMethod.getDeclaringClass()
-					.getModifiers())) {
-				readMethod.setAccessible(true);
-			}
-			return readMethod.invoke(entity);
-		} catch (Exception e) {
-			LOG.error("获取属性值失败", e);
-			throw new DaoException(e);
-		}
-	}
 }
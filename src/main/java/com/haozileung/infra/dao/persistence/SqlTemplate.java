@@ -0,0 +1,127 @@
+package com.haozileung.infra.dao.persistence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的sql模板，包含sql语句及参数提取计划
+ * <p>
+ * 参数提取计划记录了每个?号对应的操作字段下标和值下标，命中缓存时只需按计划取值即可
+ * </p>
+ */
+public class SqlTemplate {
+
+	/**
+	 * sql语句
+	 */
+	private final String sql;
+
+	/**
+	 * 主键名称
+	 */
+	private final String primaryKey;
+
+	/**
+	 * 参数对应的操作字段下标
+	 */
+	private final int[] fieldIndexes;
+
+	/**
+	 * 参数对应的值下标
+	 */
+	private final int[] valueIndexes;
+
+	public SqlTemplate(String sql, String primaryKey, int[] fieldIndexes,
+			int[] valueIndexes) {
+		this.sql = sql;
+		this.primaryKey = primaryKey;
+		this.fieldIndexes = fieldIndexes;
+		this.valueIndexes = valueIndexes;
+	}
+
+	/**
+	 * 按参数提取计划绑定参数
+	 *
+	 * @param autoFields
+	 *            合并后的操作字段，顺序需与构建模板时一致
+	 * @return bound sql
+	 */
+	public BoundSql bind(List<AutoField> autoFields) {
+		List<Object> params = new ArrayList<Object>(fieldIndexes.length);
+		for (int i = 0; i < fieldIndexes.length; i++) {
+			params.add(autoFields.get(fieldIndexes[i]).getValues()[valueIndexes[i]]);
+		}
+		return new BoundSql(sql, primaryKey, params);
+	}
+
+	public String getSql() {
+		return sql;
+	}
+
+	public String getPrimaryKey() {
+		return primaryKey;
+	}
+
+	/**
+	 * 构建sql时记录参数来源
+	 */
+	public static class Recorder {
+
+		/**
+		 * 合并后的操作字段，构建过程中原列表会被修改，这里保留原始顺序
+		 */
+		private final List<AutoField> autoFields;
+
+		private final List<Object> params = new ArrayList<Object>();
+
+		private final List<Integer> fieldIndexes = new ArrayList<Integer>();
+
+		private final List<Integer> valueIndexes = new ArrayList<Integer>();
+
+		public Recorder(List<AutoField> autoFields) {
+			this.autoFields = new ArrayList<AutoField>(autoFields);
+		}
+
+		/**
+		 * 添加参数
+		 *
+		 * @param autoField
+		 *            参数来源字段
+		 * @param valueIndex
+		 *            值下标
+		 */
+		public void add(AutoField autoField, int valueIndex) {
+			int fieldIndex = -1;
+			for (int i = 0; i < autoFields.size(); i++) {
+				if (autoFields.get(i) == autoField) {
+					fieldIndex = i;
+					break;
+				}
+			}
+			fieldIndexes.add(fieldIndex);
+			valueIndexes.add(valueIndex);
+			params.add(autoField.getValues()[valueIndex]);
+		}
+
+		public List<Object> getParams() {
+			return params;
+		}
+
+		/**
+		 * 生成模板
+		 *
+		 * @param sql
+		 * @param primaryKey
+		 * @return sql template
+		 */
+		public SqlTemplate toTemplate(String sql, String primaryKey) {
+			int[] fields = new int[fieldIndexes.size()];
+			int[] values = new int[valueIndexes.size()];
+			for (int i = 0; i < fields.length; i++) {
+				fields[i] = fieldIndexes.get(i);
+				values[i] = valueIndexes.get(i);
+			}
+			return new SqlTemplate(sql, primaryKey, fields, values);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.haozileung.infra.dao.persistence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * sql模板缓存的key，由实体类、操作类型以及Criteria结构组成
+ */
+public class SqlTemplateKey {
+
+	/**
+	 * insert语句
+	 */
+	public static final int INSERT = 1;
+
+	/**
+	 * update语句
+	 */
+	public static final int UPDATE = 2;
+
+	/**
+	 * 按条件delete语句
+	 */
+	public static final int DELETE = 3;
+
+	/**
+	 * 按主键delete语句
+	 */
+	public static final int DELETE_BY_ID = 4;
+
+	/**
+	 * 按主键查询语句
+	 */
+	public static final int BY_ID = 5;
+
+	/**
+	 * 按条件查询语句
+	 */
+	public static final int QUERY = 6;
+
+	/**
+	 * 列表查询语句
+	 */
+	public static final int LIST = 7;
+
+	/**
+	 * 记录数查询语句
+	 */
+	public static final int COUNT = 8;
+
+	/**
+	 * 游标分页列表查询语句
+	 */
+	public static final int LIST_SEEK = 9;
+
+	/**
+	 * 游标分页第一页列表查询语句
+	 */
+	public static final int LIST_SEEK_FIRST = 10;
+
+	/**
+	 * 白名单分隔标识
+	 */
+	private static final Integer INCLUDE_MARK = -1;
+
+	/**
+	 * 黑名单分隔标识
+	 */
+	private static final Integer EXCLUDE_MARK = -2;
+
+	/**
+	 * 排序字段分隔标识
+	 */
+	private static final Integer ORDER_BY_MARK = -3;
+
+	/**
+	 * 组成key的各部分
+	 */
+	private final Object[] parts;
+
+	/**
+	 * hash值
+	 */
+	private final int hash;
+
+	private SqlTemplateKey(Object[] parts) {
+		this.parts = parts;
+		this.hash = Arrays.hashCode(parts);
+	}
+
+	/**
+	 * 创建key
+	 *
+	 * @param nameHandler
+	 *            名称处理器，按实例区分
+	 * @param entityClass
+	 *            实体类
+	 * @param operation
+	 *            操作类型
+	 * @param criteria
+	 *            the criteria
+	 * @param autoFields
+	 *            合并后的操作字段
+	 * @return sql template key
+	 */
+	public static SqlTemplateKey create(NameHandler nameHandler,
+			Class<?> entityClass, int operation, Criteria criteria,
+			List<AutoField> autoFields) {
+
+		List<Object> parts = new ArrayList<Object>();
+		parts.add(new IdentityHolder(nameHandler));
+		parts.add(entityClass);
+		parts.add(operation);
+
+		if (autoFields != null) {
+			for (AutoField autoField : autoFields) {
+				Object[] values = autoField.getValues();
+				parts.add(autoField.getType());
+				parts.add(autoField.getName());
+				parts.add(autoField.getSqlOperator());
+				parts.add(autoField.getFieldOperator());
+				parts.add(values == null ? -1 : values.length);
+				parts.add(values != null && values.length > 0
+						&& values[0] == null);
+				// 主键值名称直接拼接在sql中，需作为key的一部分
+				if (autoField.getType() == AutoField.PK_VALUE_NAME
+						&& values != null && values.length > 0) {
+					parts.add(values[0]);
+				}
+			}
+		}
+
+		if (criteria != null) {
+			if (criteria.getIncludeFields() != null) {
+				parts.add(INCLUDE_MARK);
+				parts.addAll(criteria.getIncludeFields());
+			}
+			if (criteria.getExcludeFields() != null) {
+				parts.add(EXCLUDE_MARK);
+				parts.addAll(criteria.getExcludeFields());
+			}
+			if (operation == LIST || operation == LIST_SEEK
+					|| operation == LIST_SEEK_FIRST) {
+				parts.add(ORDER_BY_MARK);
+				for (AutoField autoField : criteria.getOrderByFields()) {
+					parts.add(autoField.getName());
+					parts.add(autoField.getFieldOperator());
+				}
+			}
+		}
+		return new SqlTemplateKey(parts.toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SqlTemplateKey)) {
+			return false;
+		}
+		SqlTemplateKey other = (SqlTemplateKey) obj;
+		return hash == other.hash && Arrays.equals(parts, other.parts);
+	}
+
+	/**
+	 * 按引用比较的包装，名称处理器可能带有状态
+	 */
+	private static class IdentityHolder {
+
+		private final Object target;
+
+		IdentityHolder(Object target) {
+			this.target = target;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(target);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityHolder
+					&& ((IdentityHolder) obj).target == target;
+		}
+	}
+}
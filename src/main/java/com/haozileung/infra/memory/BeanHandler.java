@@ -8,6 +8,9 @@ public class BeanHandler<T> implements ResultSetHandler<T> {
 
 	private BeanProcessor convert;
 
+	/* 上次编译的行映射器，结果集结构一致时复用 */
+	private RowMapper<T> mapper;
+
 	public BeanHandler(Class<T> type) {
 		this.type = type;
 		this.convert = new BeanProcessor();
@@ -15,6 +18,12 @@ public class BeanHandler<T> implements ResultSetHandler<T> {
 
 	@Override
 	public T handle(ResultSet rs) throws SQLException {
-		return rs.next() ? this.convert.toBean(rs, this.type) : null;
+		if (!rs.next()) {
+			return null;
+		}
+		RowMapper<T> rowMapper = this.convert.compile(rs, this.type,
+				this.mapper);
+		this.mapper = rowMapper;
+		return rowMapper.mapRow(rs);
 	}
 }
@@ -2,6 +2,7 @@ package com.haozileung.infra.memory;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class BeanListHandler<T> implements ResultSetHandler<List<T>> {
@@ -10,6 +11,9 @@ public class BeanListHandler<T> implements ResultSetHandler<List<T>> {
 
 	private BeanProcessor convert = new BeanProcessor();
 
+	/* 上次编译的行映射器，结果集结构一致时复用 */
+	private RowMapper<T> mapper;
+
 	public BeanListHandler(Class<T> type) {
 		this.type = type;
 		this.convert = new BeanProcessor();
@@ -17,6 +21,16 @@ public class BeanListHandler<T> implements ResultSetHandler<List<T>> {
 
 	@Override
 	public List<T> handle(ResultSet rs) throws SQLException {
-		return this.convert.toBeanList(rs, type);
+		List<T> results = new ArrayList<T>();
+		if (!rs.next()) {
+			return results;
+		}
+		RowMapper<T> rowMapper = this.convert.compile(rs, this.type,
+				this.mapper);
+		this.mapper = rowMapper;
+		do {
+			results.add(rowMapper.mapRow(rs));
+		} while (rs.next());
+		return results;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
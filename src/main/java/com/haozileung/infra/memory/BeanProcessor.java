@@ -8,7 +8,6 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLXML;
 import java.sql.Timestamp;
@@ -18,6 +17,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 public class BeanProcessor {
 
@@ -36,6 +39,51 @@ public class BeanProcessor {
 		primitiveDefaults.put(Character.TYPE, Character.valueOf((char) 0));
 	}
 
+	/* 每个bean类型最多缓存的行映射器数，临时拼出的列组合较多时淘汰最久未用的 */
+	private static final int MAX_MAPPERS_PER_TYPE = 256;
+
+	/* 按bean类型缓存编译好的行映射器，key为列标签列表 */
+	private static final ClassValue<Cache<List<String>, RowMapper<?>>> mappingCache = new ClassValue<Cache<List<String>, RowMapper<?>>>() {
+		@Override
+		protected Cache<List<String>, RowMapper<?>> computeValue(Class<?> type) {
+			return CacheBuilder.newBuilder().maximumSize(MAX_MAPPERS_PER_TYPE)
+					.build();
+		}
+	};
+
+	private static final AtomicLong mappingHits = new AtomicLong();
+
+	private static final AtomicLong mappingMisses = new AtomicLong();
+
+	/**
+	 * 映射缓存命中次数
+	 *
+	 * @return
+	 */
+	public static long getMappingCacheHits() {
+		return mappingHits.get();
+	}
+
+	/**
+	 * 映射缓存未命中次数
+	 *
+	 * @return
+	 */
+	public static long getMappingCacheMisses() {
+		return mappingMisses.get();
+	}
+
+	/**
+	 * 映射缓存命中率，没有请求时返回0
+	 *
+	 * @return
+	 */
+	public static double getMappingCacheHitRate() {
+		long hits = mappingHits.get();
+		long total = hits + mappingMisses.get();
+		return total == 0 ? 0d : (double) hits / total;
+	}
+
 	/* 调用Setter方法 */
 	private void callSetter(Object target, PropertyDescriptor prop, Object value)
 			throws SQLException {
@@ -98,29 +146,17 @@ public class BeanProcessor {
 		}
 	}
 
-	private <T> T createBean(ResultSet rs, Class<T> type,
-			PropertyDescriptor[] props, int[] columnToProperty)
-			throws SQLException {
+	/* 按原方式处理单列：类型判断、取值并调用setter */
+	void setColumn(Object bean, ResultSet rs, int index,
+			PropertyDescriptor prop) throws SQLException {
+		Class<?> propType = prop.getPropertyType();
 
-		T bean = this.newInstance(type);
-
-		for (int i = 1; i < columnToProperty.length; i++) {
-			if (columnToProperty[i] == PROPERTY_NOT_FOUND) {
-				continue;
-			}
+		Object value = this.processColumn(rs, index, propType);
 
-			PropertyDescriptor prop = props[columnToProperty[i]];
-			Class<?> propType = prop.getPropertyType();
-
-			Object value = this.processColumn(rs, i, propType);
-
-			if (propType != null && value == null && propType.isPrimitive()) {
-				value = primitiveDefaults.get(propType);
-			}
-			this.callSetter(bean, prop, value);
+		if (propType != null && value == null && propType.isPrimitive()) {
+			value = primitiveDefaults.get(propType);
 		}
-
-		return bean;
+		this.callSetter(bean, prop, value);
 	}
 
 	private boolean isCompatibleType(Object value, Class<?> type) {
@@ -160,10 +196,10 @@ public class BeanProcessor {
 
 	}
 
-	private int[] mapColumnsToProperties(ResultSetMetaData rsmd,
-			PropertyDescriptor[] props) throws SQLException {
+	private int[] mapColumnsToProperties(String[] labels,
+			PropertyDescriptor[] props) {
 
-		int cols = rsmd.getColumnCount();
+		int cols = labels.length;
 		int[] columnToProperty = new int[cols + 1];
 		Arrays.fill(columnToProperty, PROPERTY_NOT_FOUND);
 
@@ -173,11 +209,8 @@ public class BeanProcessor {
 		}
 
 		for (int col = 1; col <= cols; col++) {
-			String columnName = rsmd.getColumnLabel(col);
-			if (null == columnName || 0 == columnName.length()) {
-				columnName = rsmd.getColumnName(col);
-			}
-			String propertyName = columnName.replaceAll("_", "").toLowerCase();
+			String columnName = labels[col - 1];
+			String propertyName = normalize(columnName);
 			if (propertyMap.containsKey(propertyName)) {
 				columnToProperty[col] = propertyMap.get(propertyName);
 			}
@@ -186,18 +219,16 @@ public class BeanProcessor {
 		return columnToProperty;
 	}
 
-	private <T> T newInstance(Class<T> c) throws SQLException {
-		try {
-			return c.newInstance();
-
-		} catch (InstantiationException e) {
-			throw new SQLException("Cannot create " + c.getName() + ": "
-					+ e.getMessage());
-
-		} catch (IllegalAccessException e) {
-			throw new SQLException("Cannot create " + c.getName() + ": "
-					+ e.getMessage());
+	/* 去掉下划线并转小写，不使用正则 */
+	private static String normalize(String columnName) {
+		StringBuilder sb = new StringBuilder(columnName.length());
+		for (int i = 0; i < columnName.length(); i++) {
+			char c = columnName.charAt(i);
+			if (c != '_') {
+				sb.append(c);
+			}
 		}
+		return sb.toString().toLowerCase();
 	}
 
 	private Object processColumn(ResultSet rs, int index, Class<?> propType)
@@ -259,11 +290,57 @@ public class BeanProcessor {
 		return beanInfo.getPropertyDescriptors();
 	}
 
-	public <T> T toBean(ResultSet rs, Class<T> type) throws SQLException {
+	/**
+	 * 按结果集结构编译行映射器，相同(bean类型, 列标签)只编译一次
+	 *
+	 * @param type
+	 *            bean类型
+	 * @param labels
+	 *            列标签
+	 * @return
+	 * @throws SQLException
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> RowMapper<T> compile(Class<T> type, String[] labels)
+			throws SQLException {
+		Cache<List<String>, RowMapper<?>> mappers = mappingCache.get(type);
+		List<String> key = Arrays.asList(labels);
+		RowMapper<T> mapper = (RowMapper<T>) mappers.getIfPresent(key);
+		if (mapper != null) {
+			mappingHits.incrementAndGet();
+			return mapper;
+		}
+		mappingMisses.incrementAndGet();
+
 		PropertyDescriptor[] props = this.propertyDescriptors(type);
-		ResultSetMetaData rsmd = rs.getMetaData();
-		int[] columnToProperty = this.mapColumnsToProperties(rsmd, props);
-		return this.createBean(rs, type, props, columnToProperty);
+		int[] columnToProperty = this.mapColumnsToProperties(labels, props);
+		mapper = RowMapper.compile(type, labels, props, columnToProperty, this);
+		RowMapper<?> existing = mappers.asMap().putIfAbsent(key, mapper);
+		return existing != null ? (RowMapper<T>) existing : mapper;
+	}
+
+	/**
+	 * 获取与结果集结构一致的行映射器，mapper可以复用时直接返回
+	 *
+	 * @param rs
+	 * @param type
+	 * @param mapper
+	 *            上次使用的映射器，可为null
+	 * @return
+	 * @throws SQLException
+	 */
+	public <T> RowMapper<T> compile(ResultSet rs, Class<T> type,
+			RowMapper<T> mapper) throws SQLException {
+		String[] labels = RowMapper.columnLabels(rs.getMetaData());
+		if (mapper != null && mapper.matches(type, labels)) {
+			mappingHits.incrementAndGet();
+			return mapper;
+		}
+		return this.compile(type, labels);
+	}
+
+	public <T> T toBean(ResultSet rs, Class<T> type) throws SQLException {
+		return this.compile(rs, type, null).mapRow(rs);
 	}
 
 	public <T> List<T> toBeanList(ResultSet rs, Class<T> type)
@@ -274,12 +351,10 @@ public class BeanProcessor {
 			return results;
 		}
 
-		PropertyDescriptor[] props = this.propertyDescriptors(type);
-		ResultSetMetaData rsmd = rs.getMetaData();
-		int[] columnToProperty = this.mapColumnsToProperties(rsmd, props);
+		RowMapper<T> rowMapper = this.compile(rs, type, null);
 
 		do {
-			results.add(this.createBean(rs, type, props, columnToProperty));
+			results.add(rowMapper.mapRow(rs));
 		} while (rs.next());
 
 		return results;
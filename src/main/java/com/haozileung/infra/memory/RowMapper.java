@@ -0,0 +1,336 @@
+package com.haozileung.infra.memory;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 编译后的行映射器，每一列绑定类型化的取值方法和setter
+ * <p>
+ * 按(bean类型, 列标签)编译一次，之后每行只做取值和赋值，不再做类型判断和反射调用
+ * </p>
+ */
+public class RowMapper<T> {
+
+	private static final Logger LOG = LoggerFactory
+			.getLogger(RowMapper.class);
+
+	private final Class<T> type;
+
+	/**
+	 * 列标签，用于判断结果集结构是否一致
+	 */
+	private final String[] labels;
+
+	private final ColumnBinding[] bindings;
+
+	RowMapper(Class<T> type, String[] labels, ColumnBinding[] bindings) {
+		this.type = type;
+		this.labels = labels;
+		this.bindings = bindings;
+	}
+
+	/**
+	 * 编译行映射器
+	 *
+	 * @param type
+	 *            bean类型
+	 * @param labels
+	 *            列标签
+	 * @param props
+	 *            bean属性
+	 * @param columnToProperty
+	 *            列与属性的对应关系，下标从1开始
+	 * @param processor
+	 *            不能编译的列交给processor按原方式处理
+	 * @return
+	 */
+	static <T> RowMapper<T> compile(Class<T> type, String[] labels,
+			PropertyDescriptor[] props, int[] columnToProperty,
+			BeanProcessor processor) {
+		List<ColumnBinding> bindings = new ArrayList<ColumnBinding>();
+		for (int i = 1; i < columnToProperty.length; i++) {
+			if (columnToProperty[i] < 0) {
+				continue;
+			}
+			PropertyDescriptor prop = props[columnToProperty[i]];
+			if (prop.getWriteMethod() == null) {
+				continue;
+			}
+			bindings.add(bind(i, prop, processor));
+		}
+		return new RowMapper<T>(type, labels,
+				bindings.toArray(new ColumnBinding[bindings.size()]));
+	}
+
+	/**
+	 * 读取结果集的列标签
+	 *
+	 * @param rsmd
+	 * @return
+	 * @throws SQLException
+	 */
+	static String[] columnLabels(ResultSetMetaData rsmd) throws SQLException {
+		int cols = rsmd.getColumnCount();
+		String[] labels = new String[cols];
+		for (int col = 1; col <= cols; col++) {
+			String columnName = rsmd.getColumnLabel(col);
+			if (null == columnName || 0 == columnName.length()) {
+				columnName = rsmd.getColumnName(col);
+			}
+			labels[col - 1] = columnName;
+		}
+		return labels;
+	}
+
+	/**
+	 * 是否与结果集结构一致
+	 *
+	 * @param type
+	 * @param labels
+	 * @return
+	 */
+	boolean matches(Class<?> type, String[] labels) {
+		return this.type == type && Arrays.equals(this.labels, labels);
+	}
+
+	/**
+	 * 映射当前行
+	 *
+	 * @param rs
+	 * @return
+	 * @throws SQLException
+	 */
+	public T mapRow(ResultSet rs) throws SQLException {
+		T bean;
+		try {
+			bean = type.newInstance();
+		} catch (InstantiationException e) {
+			throw new SQLException("Cannot create " + type.getName() + ": "
+					+ e.getMessage());
+		} catch (IllegalAccessException e) {
+			throw new SQLException("Cannot create " + type.getName() + ": "
+					+ e.getMessage());
+		}
+		for (ColumnBinding binding : bindings) {
+			binding.apply(bean, rs);
+		}
+		return bean;
+	}
+
+	private static ColumnBinding bind(final int index,
+			final PropertyDescriptor prop, final BeanProcessor processor) {
+		Method setter = prop.getWriteMethod();
+		Class<?> propType = setter.getParameterTypes()[0];
+		try {
+			if (propType == Integer.TYPE) {
+				final ObjIntConsumer<Object> set = setter(setter,
+						ObjIntConsumer.class, Integer.TYPE);
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						set.accept(bean, rs.getInt(index));
+					}
+				};
+			} else if (propType == Long.TYPE) {
+				final ObjLongConsumer<Object> set = setter(setter,
+						ObjLongConsumer.class, Long.TYPE);
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						set.accept(bean, rs.getLong(index));
+					}
+				};
+			} else if (propType == Double.TYPE) {
+				final ObjDoubleConsumer<Object> set = setter(setter,
+						ObjDoubleConsumer.class, Double.TYPE);
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						set.accept(bean, rs.getDouble(index));
+					}
+				};
+			}
+			final BiConsumer<Object, Object> set = setter(setter,
+					BiConsumer.class, Object.class);
+			if (propType == String.class) {
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						set.accept(bean, rs.getString(index));
+					}
+				};
+			} else if (propType == Integer.class) {
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						int value = rs.getInt(index);
+						set.accept(bean, rs.wasNull() ? null : Integer
+								.valueOf(value));
+					}
+				};
+			} else if (propType == Long.class) {
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						long value = rs.getLong(index);
+						set.accept(bean,
+								rs.wasNull() ? null : Long.valueOf(value));
+					}
+				};
+			} else if (propType == Double.class) {
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						double value = rs.getDouble(index);
+						set.accept(bean,
+								rs.wasNull() ? null : Double.valueOf(value));
+					}
+				};
+			} else if (propType == Boolean.TYPE || propType == Boolean.class) {
+				final boolean primitive = propType.isPrimitive();
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						boolean value = rs.getBoolean(index);
+						set.accept(bean, !primitive && rs.wasNull() ? null
+								: Boolean.valueOf(value));
+					}
+				};
+			} else if (propType == Float.TYPE || propType == Float.class) {
+				final boolean primitive = propType.isPrimitive();
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						float value = rs.getFloat(index);
+						set.accept(bean, !primitive && rs.wasNull() ? null
+								: Float.valueOf(value));
+					}
+				};
+			} else if (propType == Short.TYPE || propType == Short.class) {
+				final boolean primitive = propType.isPrimitive();
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						short value = rs.getShort(index);
+						set.accept(bean, !primitive && rs.wasNull() ? null
+								: Short.valueOf(value));
+					}
+				};
+			} else if (propType == Byte.TYPE || propType == Byte.class) {
+				final boolean primitive = propType.isPrimitive();
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						byte value = rs.getByte(index);
+						set.accept(bean, !primitive && rs.wasNull() ? null
+								: Byte.valueOf(value));
+					}
+				};
+			} else if (propType == Timestamp.class || propType == Date.class) {
+				return new ColumnBinding(prop) {
+					@Override
+					void set(Object bean, ResultSet rs) throws SQLException {
+						set.accept(bean, rs.getTimestamp(index));
+					}
+				};
+			}
+		} catch (LambdaConversionException | IllegalAccessException
+				| RuntimeException e) {
+			LOG.debug("生成setter失败，按原方式赋值 {}", setter, e);
+		}
+		return new ColumnBinding(prop) {
+			@Override
+			void set(Object bean, ResultSet rs) throws SQLException {
+				processor.setColumn(bean, rs, index, prop);
+			}
+		};
+	}
+
+	/**
+	 * 用LambdaMetafactory生成setter
+	 *
+	 * @param setter
+	 *            setter方法
+	 * @param functionType
+	 *            函数接口，方法名为accept
+	 * @param valueType
+	 *            函数接口中值参数的类型
+	 * @return
+	 * @throws LambdaConversionException
+	 * @throws IllegalAccessException
+	 */
+	@SuppressWarnings("unchecked")
+	private static <F> F setter(Method setter, Class<?> functionType,
+			Class<?> valueType) throws LambdaConversionException,
+			IllegalAccessException {
+		if (!Modifier.isPublic(setter.getDeclaringClass().getModifiers())) {
+			setter.setAccessible(true);
+		}
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		MethodHandle handle = lookup.unreflect(setter);
+		Class<?> paramType = setter.getParameterTypes()[0];
+		Class<?> instantiatedType = valueType.isPrimitive() ? paramType
+				: ClassUtils.primitiveToWrapper(paramType);
+		CallSite site = LambdaMetafactory.metafactory(lookup, "accept",
+				MethodType.methodType(functionType), MethodType.methodType(
+						Void.TYPE, Object.class, valueType), handle,
+				MethodType.methodType(Void.TYPE, setter.getDeclaringClass(),
+						instantiatedType));
+		try {
+			return (F) site.getTarget().invoke();
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			// 不捕获变量的工厂方法不会抛出受检异常
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 列与属性的绑定
+	 */
+	abstract static class ColumnBinding {
+
+		private final PropertyDescriptor prop;
+
+		ColumnBinding(PropertyDescriptor prop) {
+			this.prop = prop;
+		}
+
+		void apply(Object bean, ResultSet rs) throws SQLException {
+			try {
+				set(bean, rs);
+			} catch (SQLException e) {
+				throw e;
+			} catch (RuntimeException e) {
+				throw new SQLException("Cannot set " + prop.getName() + ": "
+						+ e.getMessage());
+			}
+		}
+
+		abstract void set(Object bean, ResultSet rs) throws SQLException;
+	}
+}
@@ -16,11 +16,15 @@ public class DataSourceUtil {
 	private static final Logger logger = LoggerFactory
 			.getLogger(DataSourceUtil.class);
 	private final static ThreadLocal<Connection> conns = new ThreadLocal<Connection>();
+	/**
+	 * 当前线程的连接上是否执行过修改，关闭连接时清除
+	 */
+	private final static ThreadLocal<Boolean> written = new ThreadLocal<Boolean>();
 	private static DruidDataSource druidDataSource;
 
 	private static boolean show_sql = true;
 
-	public final static Connection getConnection() throws SQLException {
+	private static DruidDataSource getDataSource() {
 		if (null == druidDataSource) {
 			druidDataSource = new DruidDataSource();
 			druidDataSource.setUrl(PropertiesUtil.getProperties().getProperty(
@@ -55,12 +59,58 @@ public class DataSourceUtil {
 			show_sql = ((show_sql_prop != null) && show_sql_prop
 					.equalsIgnoreCase("true"));
 		}
+		return druidDataSource;
+	}
+
+	public final static Connection getConnection() throws SQLException {
+		DruidDataSource dataSource = getDataSource();
 		Connection conn = conns.get();
 		if (conn == null || conn.isClosed()) {
-			conn = druidDataSource.getConnection();
+			conn = dataSource.getConnection();
 			conn.setAutoCommit(false);
 			conns.set(conn);
+			written.remove();
 		}
+		return debug(conn);
+	}
+
+	/**
+	 * 从连接池获取一个不绑定当前线程的连接，使用自动提交，调用方负责关闭
+	 *
+	 * @return
+	 * @throws SQLException
+	 */
+	public final static Connection openConnection() throws SQLException {
+		return debug(getDataSource().getConnection());
+	}
+
+	/**
+	 * 记录当前线程的连接上执行了修改，由DAO的写操作调用
+	 */
+	public final static void markWritten() {
+		written.set(Boolean.TRUE);
+	}
+
+	/**
+	 * 当前线程的连接上是否有未提交的修改，此时其他连接读取不到这些修改。
+	 * 只跟踪经过markWritten的修改，直接使用getConnection()写入的需要自行调用markWritten
+	 *
+	 * @return
+	 */
+	public final static boolean inTransaction() {
+		Connection conn = conns.get();
+		if (conn == null || written.get() == null) {
+			return false;
+		}
+		try {
+			return !conn.isClosed();
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+			return true;
+		}
+	}
+
+	private static Connection debug(Connection conn) {
 		return (show_sql && !Proxy.isProxyClass(conn.getClass())) ? new _DebugConnection(
 				conn).getConnection() : conn;
 	}
@@ -107,6 +157,7 @@ public class DataSourceUtil {
 			}
 			conns.set(null);
 		}
+		written.remove();
 	}
 
 	public static void destroy() {
@@ -8,6 +8,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.haozileung.infra.cache.CacheHelper;
+import com.haozileung.infra.cache.CacheStats;
 import com.haozileung.infra.utils.DataSourceUtil;
 
 @WebListener
@@ -18,6 +19,7 @@ public class AppInitializer implements ServletContextListener {
 
 	@Override
 	public void contextInitialized(ServletContextEvent sce) {
+		CacheStats.registerMBean();
 		logger.info("项目已启动...");
 	}
 
@@ -25,6 +27,7 @@ public class AppInitializer implements ServletContextListener {
 	public void contextDestroyed(ServletContextEvent sce) {
 		DataSourceUtil.destroy();
 		CacheHelper.destroy();
+		CacheStats.unregisterMBean();
 		logger.info("项目已停止...");
 	}
 }
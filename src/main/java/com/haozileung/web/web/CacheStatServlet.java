@@ -0,0 +1,37 @@
+package com.haozileung.web.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.alibaba.fastjson.JSON;
+import com.haozileung.infra.cache.CacheStats;
+
+/**
+ * 缓存统计，与Druid监控页面放在一起；region参数只返回该region
+ * <p>
+ * 只读且不返回热点key(可能包含用户ID)，热点key和清零通过JMX(CacheStatsViewMBean)
+ * </p>
+ */
+@WebServlet("/druid/cache.json")
+public class CacheStatServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doGet(HttpServletRequest request,
+			HttpServletResponse response) throws ServletException, IOException {
+		response.setContentType("application/json;charset=UTF-8");
+		String region = request.getParameter("region");
+		Object stats = StringUtils.isBlank(region) ? CacheStats.snapshot(0)
+				: CacheStats.snapshot(region, 0);
+		PrintWriter pw = response.getWriter();
+		pw.write(JSON.toJSONString(stats));
+	}
+}
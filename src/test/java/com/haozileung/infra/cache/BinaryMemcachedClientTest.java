@@ -0,0 +1,178 @@
+package com.haozileung.infra.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BinaryMemcachedClientTest {
+
+	private MemcachedStub stub;
+
+	private BinaryMemcachedClient client;
+
+	private NioMemCache cache;
+
+	@Before
+	public void setUp() throws IOException {
+		stub = new MemcachedStub();
+		client = new BinaryMemcachedClient(Collections.singletonList(stub.getAddress()), 2, 1000);
+		cache = new NioMemCache(client, "User", 60, 2000);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		client.close();
+		stub.close();
+	}
+
+	@Test
+	public void testGetSetDeleteFlush() throws Exception {
+		byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+		assertTrue(client.set("a", value, 0).get(1, TimeUnit.SECONDS));
+		assertArrayEquals(value, client.get("a").get(1, TimeUnit.SECONDS));
+		assertNull(client.get("missing").get(1, TimeUnit.SECONDS));
+		assertTrue(client.delete("a").get(1, TimeUnit.SECONDS));
+		assertFalse(client.delete("a").get(1, TimeUnit.SECONDS));
+		assertNull(client.get("a").get(1, TimeUnit.SECONDS));
+
+		client.set("b", value, 0).get(1, TimeUnit.SECONDS);
+		client.flushAll().get(1, TimeUnit.SECONDS);
+		assertEquals(0, stub.size());
+	}
+
+	@Test
+	public void testCacheRoundTrip() {
+		cache.put("a", "A");
+		cache.put(1, 11L);
+		cache.put("key with space", "S");
+		assertEquals("A", cache.get("a"));
+		assertEquals(11L, cache.get(1));
+		assertEquals("S", cache.get("key with space"));
+		assertNull(cache.get("missing"));
+		cache.remove("a");
+		assertNull(cache.get("a"));
+		cache.clear();
+		assertNull(cache.get(1));
+	}
+
+	@Test
+	public void testGetMultiWithMisses() throws Exception {
+		Map<Object, Serializable> values = new HashMap<Object, Serializable>();
+		for (int i = 0; i < 100; i++) {
+			values.put("k" + i, "v" + i);
+		}
+		cache.putAll(values);
+		List<Object> keys = new ArrayList<Object>();
+		for (int i = 0; i < 120; i++) {
+			keys.add("k" + i);
+		}
+		Map<Object, Object> result = cache.getAll(keys);
+		assertEquals(100, result.size());
+		assertEquals("v5", result.get("k5"));
+		assertFalse(result.containsKey("k110"));
+
+		Map<String, byte[]> raw = client.getMulti(Arrays.asList("x", "y")).get(1, TimeUnit.SECONDS);
+		assertTrue(raw.isEmpty());
+	}
+
+	@Test
+	public void testLargeValue() {
+		StringBuilder big = new StringBuilder();
+		Random random = new Random(1);
+		for (int i = 0; i < 200000; i++) {
+			big.append((char) ('a' + random.nextInt(26)));
+		}
+		cache.put("big", big.toString());
+		assertEquals(big.toString(), cache.get("big"));
+	}
+
+	@Test
+	public void testConcurrentCallers() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t = 0; t < 16; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						for (int i = 0; i < 500; i++) {
+							String key = "t" + thread + "_" + i;
+							cache.put(key, i);
+							assertEquals(i, cache.get(key));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testUnresponsiveServerDoesNotBlockOthers() throws Exception {
+		// 不accept且backlog已满的端口，连接会一直挂起直到超时
+		ServerSocket unresponsive = new ServerSocket(0, 1);
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", unresponsive.getLocalPort());
+		List<Socket> backlog = new ArrayList<Socket>();
+		for (int i = 0; i < 2; i++) {
+			Socket socket = new Socket();
+			socket.connect(address, 1000);
+			backlog.add(socket);
+		}
+		BinaryMemcachedClient twoServers = new BinaryMemcachedClient(Arrays.asList(stub.getAddress(), address), 1,
+				3000);
+		try {
+			// 按key的hashCode选择服务器，偶数落在可用的服务器上
+			List<String> live = new ArrayList<String>();
+			for (int i = 0; live.size() < 20; i++) {
+				if ((("k" + i).hashCode() & 0x7fffffff) % 2 == 0) {
+					live.add("k" + i);
+				}
+			}
+			// 期间不可用的服务器超时并重连，可用服务器的请求不受影响
+			long deadline = System.currentTimeMillis() + 5000;
+			while (System.currentTimeMillis() < deadline) {
+				for (String key : live) {
+					assertTrue(twoServers.set(key, new byte[] { 1 }, 0).get(200, TimeUnit.MILLISECONDS));
+				}
+				Thread.sleep(20);
+			}
+		} finally {
+			twoServers.close();
+			for (Socket socket : backlog) {
+				socket.close();
+			}
+			unresponsive.close();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.haozileung.infra.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.haozileung.infra.utils.PropertiesUtil;
+
+/**
+ * 本节点(CacheHelper)与另一个节点通过进程内通道互相通知清除缓存
+ * <p>
+ * CacheHelper的状态是JVM内静态的，另一个节点只有CacheInvalidator，记录收到的消息。L2需要Redis，
+ * 这里调用CacheHelper中清除、更新本节点缓存并发布消息的部分
+ * </p>
+ */
+public class CacheInvalidatorTest {
+
+	private static final String REGION = "InvalidatorTest";
+
+	private Node other;
+
+	@BeforeClass
+	public static void enableOffHeap() {
+		// 同一JVM中先运行的测试已加载OffHeapCacheManager时配置不再生效，此时只检查L1
+		PropertiesUtil.getProperties().setProperty("cache.offheap.regions", REGION);
+	}
+
+	@Before
+	public void setUp() {
+		CacheHelper.setInvalidationBus(new LoopbackInvalidationBus());
+		other = new Node();
+	}
+
+	@After
+	public void tearDown() {
+		other.close();
+		CacheHelper.setInvalidationBus(null);
+		for (String key : new String[] { "1", "2" }) {
+			EhCacheManager.evict(REGION, key);
+			OffHeapCacheManager.evict(REGION, key);
+		}
+	}
+
+	private static void load(String key, String value) {
+		EhCacheManager.set(REGION, key, value);
+		OffHeapCacheManager.set(REGION, key, value);
+	}
+
+	private static void assertCached(String expected, String key) {
+		assertEquals(expected, EhCacheManager.get(REGION, key));
+		if (OffHeapCacheManager.isEnabled(REGION)) {
+			assertEquals(expected, OffHeapCacheManager.get(REGION, key));
+		}
+	}
+
+	@Test
+	public void testEvictPublishes() throws Exception {
+		load("1", "A");
+
+		CacheHelper.evictAndPublish(REGION, "1");
+		other.awaitReceived(1);
+
+		assertEquals(REGION + ":1", other.received.get(0));
+		assertCached(null, "1");
+	}
+
+	@Test
+	public void testUpdatePublishesAndKeepsNewValue() throws Exception {
+		load("1", "old");
+
+		CacheHelper.updateAndPublish(REGION, "1", "new");
+		other.awaitReceived(1);
+		CacheHelper.getInvalidator().flush();
+
+		// 更新方的新值不被自己的消息清除
+		assertCached("new", "1");
+	}
+
+	@Test
+	public void testOtherNodeEvictsLocalCopies() {
+		load("1", "A");
+		load("2", "B");
+
+		other.invalidator.invalidate(REGION, "1");
+		other.invalidator.flush();
+
+		assertCached(null, "1");
+		assertCached("B", "2");
+		assertTrue(other.received.isEmpty());
+	}
+
+	@Test
+	public void testBatchesKeys() throws Exception {
+		for (int i = 0; i < 50; i++) {
+			CacheHelper.evictAndPublish(REGION, String.valueOf(i));
+		}
+		other.awaitReceived(50);
+		assertTrue(other.batches.size() < 50);
+	}
+
+	/**
+	 * 另一个节点，只记录收到的失效消息
+	 */
+	private static class Node implements IInvalidationListener {
+
+		final List<String> received = new CopyOnWriteArrayList<String>();
+
+		final List<Integer> batches = new CopyOnWriteArrayList<Integer>();
+
+		final CacheInvalidator invalidator = new CacheInvalidator(new LoopbackInvalidationBus(), this);
+
+		@Override
+		public void onInvalidate(String region, Collection<String> keys) {
+			batches.add(keys.size());
+			for (String key : keys) {
+				received.add(region + ":" + key);
+			}
+		}
+
+		void awaitReceived(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 2000;
+			while (received.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(count, received.size());
+		}
+
+		void close() {
+			invalidator.close();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package com.haozileung.infra.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.haozileung.web.web.User;
+
+public class FastjsonCacheCodecTest {
+
+	private final CacheCodec codec = CacheCodecs.FASTJSON;
+
+	private Object roundTrip(Serializable value) {
+		byte[] data = codec.encode(value);
+		return codec.decode(data, 0, data.length);
+	}
+
+	@Test
+	public void testKeepsTypes() {
+		assertEquals(5L, roundTrip(5L));
+		assertEquals("abc", roundTrip("abc"));
+		assertEquals(new Date(1000), roundTrip(new Date(1000)));
+
+		Bean bean = new Bean();
+		bean.setId(7L);
+		bean.setTags(Arrays.asList(1L, 2L));
+		Bean decoded = (Bean) roundTrip(bean);
+		assertEquals(Long.valueOf(7), decoded.getId());
+		assertEquals(Long.class, decoded.getTags().get(0).getClass());
+
+		NullValue tombstone = (NullValue) roundTrip(new NullValue(12345L));
+		assertEquals(12345L, tombstone.getExpireAt());
+	}
+
+	@Test
+	public void testListKeepsElementType() {
+		List<User> users = new ArrayList<User>();
+		for (int i = 0; i < 3; i++) {
+			User user = new User();
+			user.setId(i);
+			user.setName("u" + i);
+			users.add(user);
+		}
+		users.add(null);
+		@SuppressWarnings("unchecked")
+		List<User> decoded = (List<User>) roundTrip((Serializable) users);
+		assertEquals(ArrayList.class, decoded.getClass());
+		assertEquals(4, decoded.size());
+		assertEquals(User.class, decoded.get(1).getClass());
+		assertEquals(Integer.valueOf(1), decoded.get(1).getId());
+		assertEquals("u2", decoded.get(2).getName());
+		assertNull(decoded.get(3));
+
+		assertEquals(new ArrayList<Long>(), roundTrip(new ArrayList<Long>()));
+		LinkedHashSet<Long> ids = new LinkedHashSet<Long>(Arrays.asList(3L, 1L, 2L));
+		Object decodedIds = roundTrip(ids);
+		assertEquals(LinkedHashSet.class, decodedIds.getClass());
+		assertEquals(new ArrayList<Long>(ids), new ArrayList<Object>((LinkedHashSet<?>) decodedIds));
+	}
+
+	@Test
+	public void testUnsupportedValuesFallBackToJava() {
+		// 元素类型不同
+		ArrayList<Serializable> list = new ArrayList<Serializable>(Arrays.asList(1L, "2"));
+		assertNull(codec.encode(list));
+		byte[] data = CacheCodecs.encode("test", list);
+		assertEquals(JavaCacheCodec.ID, data[0] & 0x0F);
+		assertEquals(list, CacheCodecs.decode(data));
+		assertNull(codec.encode(new HashMap<String, Long>()));
+
+		// 值恰好为@type时JSON中出现"@type"，解码会拒绝，编码时就改用Java序列化
+		Bean bean = new Bean();
+		bean.setName("@type");
+		assertNull(codec.encode(bean));
+		assertEquals("@type", ((Bean) CacheCodecs.decode(CacheCodecs.encode("test", bean))).getName());
+
+		bean.setName("\"@type\"");
+		assertEquals("\"@type\"", ((Bean) roundTrip(bean)).getName());
+	}
+
+	@Test(expected = CacheException.class)
+	public void testRejectsTypeKey() {
+		decode(Bean.class.getName(), "{\"id\":1,\"other\":{\"@type\":\"java.util.Date\",\"val\":1}}");
+	}
+
+	@Test(expected = CacheException.class)
+	public void testRejectsEscapedTypeKey() {
+		decode(Bean.class.getName(), "{\"\\u0040type\":\"java.util.Date\",\"val\":1}");
+	}
+
+	@Test(expected = CacheException.class)
+	public void testRejectsClassOutsideWhitelist() {
+		decode("java.util.HashMap", "{}");
+	}
+
+	@Test(expected = CacheException.class)
+	public void testRejectsElementOutsideWhitelist() {
+		decode("java.util.ArrayList<java.net.URL>", "[]");
+	}
+
+	@Test
+	public void testObjectFieldIsNotAutoTyped() {
+		Bean bean = (Bean) decode(Bean.class.getName(), "{\"id\":1,\"other\":{\"time\":1}}");
+		assertTrue(bean.getOther() instanceof com.alibaba.fastjson.JSONObject);
+	}
+
+	private Object decode(String className, String json) {
+		byte[] name = className.getBytes(StandardCharsets.UTF_8);
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		byte[] data = new byte[2 + name.length + body.length];
+		data[1] = (byte) name.length;
+		System.arraycopy(name, 0, data, 2, name.length);
+		System.arraycopy(body, 0, data, 2 + name.length, body.length);
+		return codec.decode(data, 0, data.length);
+	}
+
+	public static class Bean implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private Long id;
+
+		private String name;
+
+		private List<Long> tags;
+
+		private Object other;
+
+		public Long getId() {
+			return id;
+		}
+
+		public void setId(Long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public List<Long> getTags() {
+			return tags;
+		}
+
+		public void setTags(List<Long> tags) {
+			this.tags = tags;
+		}
+
+		public Object getOther() {
+			return other;
+		}
+
+		public void setOther(Object other) {
+			this.other = other;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.haozileung.infra.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的memcached二进制协议服务端，只实现客户端用到的GET/GETKQ/SET/DELETE/FLUSH/NOOP，用于测试
+ */
+public class MemcachedStub implements Closeable {
+
+	private final Map<String, byte[]> store = new ConcurrentHashMap<String, byte[]>();
+
+	private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+	private final ServerSocket server;
+
+	public MemcachedStub() throws IOException {
+		this.server = new ServerSocket(0);
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "memcached-stub");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public InetSocketAddress getAddress() {
+		return new InetSocketAddress("127.0.0.1", server.getLocalPort());
+	}
+
+	public int size() {
+		return store.size();
+	}
+
+	private void accept() {
+		while (!server.isClosed()) {
+			try {
+				final Socket socket = server.accept();
+				sockets.add(socket);
+				Thread worker = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						serve(socket);
+					}
+				}, "memcached-stub-worker");
+				worker.setDaemon(true);
+				worker.start();
+			} catch (IOException e) {
+				return;
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+			byte[] header = new byte[24];
+			while (true) {
+				in.readFully(header);
+				ByteBuffer h = ByteBuffer.wrap(header);
+				byte opcode = header[1];
+				int keyLength = h.getShort(2) & 0xffff;
+				int extrasLength = header[4] & 0xff;
+				int bodyLength = h.getInt(8);
+				int opaque = h.getInt(12);
+				byte[] body = new byte[bodyLength];
+				in.readFully(body);
+				String key = new String(body, extrasLength, keyLength, StandardCharsets.UTF_8);
+				byte[] value = Arrays.copyOfRange(body, extrasLength + keyLength, bodyLength);
+				handle(out, opcode, opaque, key, value);
+				if (in.available() == 0) {
+					out.flush();
+				}
+			}
+		} catch (EOFException e) {
+			// 客户端关闭连接
+		} catch (IOException e) {
+			// 服务端关闭
+		}
+	}
+
+	private void handle(OutputStream out, byte opcode, int opaque, String key, byte[] value) throws IOException {
+		byte[] none = new byte[0];
+		switch (opcode) {
+		case 0x00: {
+			byte[] stored = store.get(key);
+			if (stored == null) {
+				respond(out, opcode, 1, opaque, none, none, "Not found".getBytes(StandardCharsets.UTF_8));
+			} else {
+				respond(out, opcode, 0, opaque, new byte[4], none, stored);
+			}
+			break;
+		}
+		case 0x0d: {
+			// GETKQ未命中时不响应
+			byte[] stored = store.get(key);
+			if (stored != null) {
+				respond(out, opcode, 0, opaque, new byte[4], key.getBytes(StandardCharsets.UTF_8), stored);
+			}
+			break;
+		}
+		case 0x01:
+			store.put(key, value);
+			respond(out, opcode, 0, opaque, none, none, none);
+			break;
+		case 0x04:
+			respond(out, opcode, store.remove(key) != null ? 0 : 1, opaque, none, none, none);
+			break;
+		case 0x08:
+			store.clear();
+			respond(out, opcode, 0, opaque, none, none, none);
+			break;
+		case 0x0a:
+			respond(out, opcode, 0, opaque, none, none, none);
+			break;
+		default:
+			respond(out, opcode, 0x81, opaque, none, none, "Unknown command".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static void respond(OutputStream out, byte opcode, int status, int opaque, byte[] extras, byte[] key,
+			byte[] value) throws IOException {
+		int bodyLength = extras.length + key.length + value.length;
+		ByteBuffer buffer = ByteBuffer.allocate(24 + bodyLength);
+		buffer.put((byte) 0x81).put(opcode).putShort((short) key.length).put((byte) extras.length).put((byte) 0)
+				.putShort((short) status).putInt(bodyLength).putInt(opaque).putLong(0).put(extras).put(key)
+				.put(value);
+		out.write(buffer.array());
+	}
+
+	@Override
+	public void close() throws IOException {
+		server.close();
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+	}
+}
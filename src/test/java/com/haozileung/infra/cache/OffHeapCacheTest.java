@@ -0,0 +1,118 @@
+package com.haozileung.infra.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapCacheTest {
+
+	private static final int BLOCK_SIZE = 256;
+
+	private static final int BLOCKS = 64;
+
+	private OffHeapCache cache;
+
+	@Before
+	public void setUp() {
+		cache = new OffHeapCache("test", BLOCK_SIZE * BLOCKS, BLOCK_SIZE, 1, 600);
+	}
+
+	@After
+	public void tearDown() {
+		cache.destroy();
+	}
+
+	/**
+	 * 随机数据，压缩后不会变小，编码后的大小接近length
+	 */
+	private static byte[] random(int length, int seed) {
+		byte[] data = new byte[length];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	@Test
+	public void testValueLargerThanBlockSize() {
+		byte[] value = random(BLOCK_SIZE * 10 + 17, 1);
+		cache.put("big", value);
+		assertArrayEquals(value, (byte[]) cache.get("big"));
+		assertTrue(cache.getUsedBytes() > value.length);
+		assertEquals(1, cache.getEntryCount());
+	}
+
+	@Test
+	public void testEvictionFreesEnoughBlocks() {
+		// 每条占8块，整段只能放下8条
+		int length = BLOCK_SIZE * 7 + 100;
+		for (int i = 0; i < 20; i++) {
+			byte[] value = random(length, i);
+			cache.put(i, value);
+			assertArrayEquals(value, (byte[]) cache.get(i));
+			// 保持0最近被访问
+			assertNotNull(cache.get(0));
+		}
+		assertEquals(8, cache.getEntryCount());
+		assertEquals(12, cache.getEvictionCount());
+		assertNotNull(cache.get(0));
+		assertNull(cache.get(1));
+		assertArrayEquals(random(length, 19), (byte[]) cache.get(19));
+	}
+
+	@Test
+	public void testReplaceReleasesOldBlocks() {
+		for (int i = 0; i < 100; i++) {
+			cache.put("a", random(BLOCK_SIZE * 3, i));
+		}
+		assertEquals(0, cache.getEvictionCount());
+		assertEquals(1, cache.getEntryCount());
+		assertArrayEquals(random(BLOCK_SIZE * 3, 99), (byte[]) cache.get("a"));
+	}
+
+	@Test
+	public void testClearResetsAccounting() {
+		for (int i = 0; i < 10; i++) {
+			cache.put(i, random(BLOCK_SIZE * 2, i));
+		}
+		cache.remove(3);
+		cache.put(4, null);
+		assertEquals(8, cache.getEntryCount());
+		cache.clear();
+		assertEquals(0, cache.getUsedBytes());
+		assertEquals(0, cache.getEntryCount());
+		assertNull(cache.get(0));
+
+		// 所有块都已归还，可以放下占满整段的数据
+		byte[] value = random(BLOCK_SIZE * BLOCKS - 100, 1);
+		cache.put("full", value);
+		assertArrayEquals(value, (byte[]) cache.get("full"));
+		assertEquals(0, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testValueLargerThanSegmentIsNotCached() {
+		cache.put("a", random(100, 1));
+		cache.put("huge", random(BLOCK_SIZE * BLOCKS + 1, 2));
+		assertNull(cache.get("huge"));
+		assertNotNull(cache.get("a"));
+	}
+
+	@Test
+	public void testExpiresOnRead() {
+		OffHeapCache.Segment segment = new OffHeapCache.Segment(BLOCKS, BLOCK_SIZE);
+		byte[] data = random(BLOCK_SIZE * 2, 1);
+		segment.put("a", data, 1000);
+		assertArrayEquals(data, segment.get("a", 999));
+		assertNull(segment.get("a", 1000));
+		assertEquals(0, segment.usedBytes);
+		assertEquals(BLOCKS, segment.freeCount);
+		assertTrue(segment.entries.isEmpty());
+	}
+}